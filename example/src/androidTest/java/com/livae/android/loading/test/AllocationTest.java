@@ -0,0 +1,284 @@
+package com.livae.android.loading.test;
+
+import android.os.Debug;
+import android.os.SystemClock;
+import android.support.v7.widget.GridLayoutManager;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.test.ActivityInstrumentationTestCase2;
+import android.view.MotionEvent;
+import android.view.View;
+import android.view.ViewGroup;
+
+import com.livae.android.loading.LoadingHelper;
+
+import java.lang.reflect.Field;
+
+/**
+ * Checks that the paths which run for every frame or every touch event do not allocate objects
+ * once they are warmed up: the scroll listener, the touch events of the pull to refresh with the
+ * translation of the items and the span lookup of the grids. Each path runs thousands of times in
+ * the main thread and the allocations of the thread are counted, any allocation fails the test.
+ * <p/>
+ * Run it with: ./gradlew connectedCheck
+ */
+public class AllocationTest extends ActivityInstrumentationTestCase2<MainActivity> {
+
+	private static final int WARM_UP_ITERATIONS = 100;
+
+	private static final int ITERATIONS = 5000;
+
+	private static final int ITEM_COUNT = 100;
+
+	private static final int ITEM_HEIGHT_DP = 48;
+
+	private static final int SPAN_COUNT = 3;
+
+	private RecyclerView mRecyclerView;
+
+	private TestAdapter mAdapter;
+
+	private LoadingHelper<RecyclerView.ViewHolder> mLoadingHelper;
+
+	private int mAllocations;
+
+	public AllocationTest() {
+		super(MainActivity.class);
+	}
+
+	public void testScrolledDoesNotAllocate() throws Throwable {
+		setUpLoadingHelper(false);
+		final RecyclerView.OnScrollListener scrollListener = findScrollListener(mRecyclerView);
+		assertNotNull("The scroll listener of the loading helper was not found", scrollListener);
+		int allocations = countAllocations(new Runnable() {
+			@Override
+			public void run() {
+				scrollListener.onScrolled(mRecyclerView, 0, 1);
+			}
+		});
+		assertEquals("Allocations in onScrolled", 0, allocations);
+	}
+
+	public void testPullToRefreshDoesNotAllocate() throws Throwable {
+		setUpLoadingHelper(false);
+		final View touchedView = new View(getActivity());
+		long downTime = SystemClock.uptimeMillis();
+		final float pullStartY = 100 * getActivity().getResources().getDisplayMetrics().density;
+		final MotionEvent down = MotionEvent.obtain(downTime, downTime, MotionEvent.ACTION_DOWN,
+				0, 0, 0);
+		final MotionEvent move = MotionEvent.obtain(downTime, downTime, MotionEvent.ACTION_MOVE,
+				0, pullStartY, 0);
+		final MotionEvent cancel = MotionEvent.obtain(downTime, downTime,
+				MotionEvent.ACTION_CANCEL, 0, 0, 0);
+		runTestOnUiThread(new Runnable() {
+			@Override
+			public void run() {
+				mLoadingHelper.enablePullToRefreshUpdate(true);
+				mLoadingHelper.enablePullToRefreshTranslation(true);
+				// the pull starts with the first move after the touch slop
+				//noinspection deprecation
+				mLoadingHelper.onTouch(touchedView, down);
+				//noinspection deprecation
+				mLoadingHelper.onTouch(touchedView, move);
+			}
+		});
+		try {
+			final int[] step = new int[1];
+			int allocations = countAllocations(new Runnable() {
+				@Override
+				public void run() {
+					// the items are moved down and up while the finger moves
+					step[0]++;
+					move.setLocation(0, pullStartY + step[0] % 200);
+					//noinspection deprecation
+					mLoadingHelper.onTouch(touchedView, move);
+				}
+			});
+			assertEquals("Allocations in the touch events of the pull to refresh", 0,
+					allocations);
+		} finally {
+			runTestOnUiThread(new Runnable() {
+				@Override
+				public void run() {
+					//noinspection deprecation
+					mLoadingHelper.onTouch(touchedView, cancel);
+				}
+			});
+			down.recycle();
+			move.recycle();
+			cancel.recycle();
+		}
+	}
+
+	public void testSpanLookupDoesNotAllocate() throws Throwable {
+		setUpLoadingHelper(true);
+		final GridLayoutManager.SpanSizeLookup lookup =
+				((GridLayoutManager) mRecyclerView.getLayoutManager()).getSpanSizeLookup();
+		final int count = mRecyclerView.getAdapter().getItemCount();
+		final int[] position = new int[1];
+		int allocations = countAllocations(new Runnable() {
+			@Override
+			public void run() {
+				int i = position[0]++ % count;
+				lookup.getSpanSize(i);
+				lookup.getSpanIndex(i, SPAN_COUNT);
+			}
+		});
+		assertEquals("Allocations in the span lookup", 0, allocations);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		if (mLoadingHelper != null) {
+			runTestOnUiThreadUnchecked(new Runnable() {
+				@Override
+				public void run() {
+					mLoadingHelper.onDestroy();
+					((ViewGroup) mRecyclerView.getParent()).removeView(mRecyclerView);
+				}
+			});
+			mLoadingHelper = null;
+		}
+		super.tearDown();
+	}
+
+	/**
+	 * Adds a recycler view with a loading helper to the activity, finishes the initial load and
+	 * waits until the items are laid out.
+	 */
+	private void setUpLoadingHelper(final boolean grid) throws Throwable {
+		runTestOnUiThread(new Runnable() {
+			@Override
+			public void run() {
+				MainActivity activity = getActivity();
+				mRecyclerView = new RecyclerView(activity);
+				int itemHeight = (int) (ITEM_HEIGHT_DP
+						* activity.getResources().getDisplayMetrics().density);
+				mAdapter = new TestAdapter(itemHeight);
+				mLoadingHelper = new LoadingHelper<>(activity, mRecyclerView, mAdapter,
+						new NoLoadListener(), null, null);
+				if (grid) {
+					GridLayoutManager layoutManager = new GridLayoutManager(activity, SPAN_COUNT);
+					layoutManager.setSpanSizeLookup(new GridLayoutManager.SpanSizeLookup() {
+						@Override
+						public int getSpanSize(int position) {
+							return position % 7 == 0 ? 2 : 1;
+						}
+					});
+					mLoadingHelper.setLayoutManager(layoutManager);
+				} else {
+					mLoadingHelper.setLayoutManager(new LinearLayoutManager(activity));
+				}
+				mLoadingHelper.enableEndlessLoading(true);
+				activity.addContentView(mRecyclerView, new ViewGroup.LayoutParams(
+						ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT));
+				mLoadingHelper.start();
+				mAdapter.mItemCount = ITEM_COUNT;
+				mLoadingHelper.finishLoadingInitial(false, ITEM_COUNT, false);
+			}
+		});
+		getInstrumentation().waitForIdleSync();
+	}
+
+	/**
+	 * Runs the path in the main thread to warm it up and then counts the allocations of the main
+	 * thread while it runs many times.
+	 *
+	 * @return The number of objects allocated
+	 */
+	private int countAllocations(final Runnable path) throws Throwable {
+		runTestOnUiThread(new Runnable() {
+			@Override
+			public void run() {
+				for (int i = 0; i < WARM_UP_ITERATIONS; i++) {
+					path.run();
+				}
+				//noinspection deprecation
+				Debug.startAllocCounting();
+				//noinspection deprecation
+				Debug.resetThreadAllocCount();
+				for (int i = 0; i < ITERATIONS; i++) {
+					path.run();
+				}
+				//noinspection deprecation
+				mAllocations = Debug.getThreadAllocCount();
+				//noinspection deprecation
+				Debug.stopAllocCounting();
+			}
+		});
+		return mAllocations;
+	}
+
+	private void runTestOnUiThreadUnchecked(Runnable runnable) throws Exception {
+		try {
+			runTestOnUiThread(runnable);
+		} catch (Exception e) {
+			throw e;
+		} catch (Throwable throwable) {
+			throw new RuntimeException(throwable);
+		}
+	}
+
+	/**
+	 * The scroll listener of the loading helper is the only one set in the recycler view and the
+	 * recycler view has no getter for it.
+	 */
+	private static RecyclerView.OnScrollListener findScrollListener(RecyclerView recyclerView)
+			throws IllegalAccessException {
+		for (Field field : RecyclerView.class.getDeclaredFields()) {
+			if (field.getType() == RecyclerView.OnScrollListener.class) {
+				field.setAccessible(true);
+				return (RecyclerView.OnScrollListener) field.get(recyclerView);
+			}
+		}
+		return null;
+	}
+
+	private static class TestAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
+
+		private final int mItemHeight;
+
+		private int mItemCount;
+
+		TestAdapter(int itemHeight) {
+			mItemHeight = itemHeight;
+		}
+
+		@Override
+		public RecyclerView.ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+			View view = new View(parent.getContext());
+			view.setLayoutParams(new RecyclerView.LayoutParams(
+					ViewGroup.LayoutParams.MATCH_PARENT, mItemHeight));
+			return new RecyclerView.ViewHolder(view) {
+			};
+		}
+
+		@Override
+		public void onBindViewHolder(RecyclerView.ViewHolder holder, int position) {
+		}
+
+		@Override
+		public int getItemCount() {
+			return mItemCount;
+		}
+	}
+
+	private static class NoLoadListener implements LoadingHelper.LoadListener {
+
+		@Override
+		public void clearAdapter() {
+		}
+
+		@Override
+		public void loadPrevious() {
+		}
+
+		@Override
+		public void loadNext() {
+		}
+
+		@Override
+		public void loadInitial() {
+		}
+	}
+}
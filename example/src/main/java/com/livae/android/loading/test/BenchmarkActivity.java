@@ -0,0 +1,412 @@
+package com.livae.android.loading.test;
+
+import android.app.Activity;
+import android.graphics.Typeface;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.support.v7.widget.GridLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.util.Log;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.ScrollView;
+import android.widget.TextView;
+
+import com.livae.android.loading.LoadingHelper;
+import com.livae.android.loading.RecyclerAdapter;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Micro benchmark of the paths of the adapter wrapper which run in every frame: the view types,
+ * the item count, the translation of the positions in the binds, the span lookup of the grids and
+ * the forwarding of the notifications of the wrapped adapter. Each path is measured with several
+ * combinations of decoration views and lists from 10 to 1M items, the results are displayed and
+ * written to the log with the tag "LoadingBenchmark".
+ * <p/>
+ * The views of each case are created in the main thread and the paths are measured in a
+ * background thread, so the measures are not interrupted by the frames of the activity. Each path
+ * runs several times to warm up and the median of the next runs is reported. The cold span index
+ * clears the cache of the span indices before each run.
+ * <p/>
+ * Run it with: adb shell am start -n com.livae.android.loading.test/.BenchmarkActivity
+ */
+public class BenchmarkActivity extends Activity {
+
+	private static final String TAG = "LoadingBenchmark";
+
+	private static final int[] SIZES = {10, 1000, 100000, 1000000};
+
+	private static final int DECORATION_HEADER = 1;
+	private static final int DECORATION_FOOTER = 2;
+	private static final int DECORATION_TOP_LOADING = 4;
+	private static final int DECORATION_BOTTOM_LOADING = 8;
+
+	private static final int[] DECORATIONS = {
+			0,
+			DECORATION_HEADER | DECORATION_FOOTER,
+			DECORATION_HEADER | DECORATION_BOTTOM_LOADING | DECORATION_FOOTER,
+			DECORATION_HEADER | DECORATION_TOP_LOADING | DECORATION_BOTTOM_LOADING
+			| DECORATION_FOOTER
+	};
+
+	private static final int MAX_OPERATIONS = 1000000;
+
+	private static final int NOTIFICATIONS = 10000;
+
+	private static final int SPAN_COUNT = 3;
+
+	private static final int WARM_UP_RUNS = 3;
+
+	private static final int MEASURED_RUNS = 7;
+
+	private TextView mResults;
+
+	private Handler mHandler;
+
+	private HandlerThread mBenchmarkThread;
+
+	private Handler mBenchmarkHandler;
+
+	private volatile boolean mDestroyed;
+
+	private int mCase;
+
+	private long mSink;
+
+	@Override
+	protected void onCreate(Bundle savedInstanceState) {
+		super.onCreate(savedInstanceState);
+		ScrollView scrollView = new ScrollView(this);
+		mResults = new TextView(this);
+		mResults.setTypeface(Typeface.MONOSPACE);
+		scrollView.addView(mResults);
+		setContentView(scrollView);
+		mHandler = new Handler();
+		mBenchmarkThread = new HandlerThread(TAG);
+		mBenchmarkThread.start();
+		mBenchmarkHandler = new Handler(mBenchmarkThread.getLooper());
+		log(String.format(Locale.US, "%-9s %-5s %-12s %10s", "size", "decor", "path", "ns/op"));
+		mHandler.post(mRunNextCase);
+	}
+
+	@Override
+	protected void onDestroy() {
+		super.onDestroy();
+		mDestroyed = true;
+		mHandler.removeCallbacks(mRunNextCase);
+		mBenchmarkThread.quit();
+	}
+
+	/**
+	 * Creates the views of the cases one by one in the main thread and measures them in the
+	 * background thread, so the results are displayed while they run.
+	 */
+	private final Runnable mRunNextCase = new Runnable() {
+		@Override
+		public void run() {
+			if (mDestroyed) {
+				return;
+			}
+			if (mCase < SIZES.length * DECORATIONS.length) {
+				int size = SIZES[mCase / DECORATIONS.length];
+				int decorations = DECORATIONS[mCase % DECORATIONS.length];
+				final Runnable measureCase = createCase(size, decorations);
+				mCase++;
+				mBenchmarkHandler.post(new Runnable() {
+					@Override
+					public void run() {
+						measureCase.run();
+						mHandler.post(mRunNextCase);
+					}
+				});
+			} else {
+				log("done " + mSink);
+			}
+		}
+	};
+
+	/**
+	 * Creates the views of a case in the main thread.
+	 *
+	 * @return The measures of the case, to run in the background thread
+	 */
+	private Runnable createCase(final int size, final int decorations) {
+		final RecyclerView recyclerView = new RecyclerView(this);
+		final BenchmarkAdapter adapter = new BenchmarkAdapter(size);
+		LoadingHelper<RecyclerView.ViewHolder> loadingHelper = new LoadingHelper<>(this,
+				recyclerView, adapter, new NoLoadListener(), null, null);
+		GridLayoutManager gridLayoutManager = new GridLayoutManager(this, SPAN_COUNT);
+		gridLayoutManager.setSpanSizeLookup(new GridLayoutManager.SpanSizeLookup() {
+			@Override
+			public int getSpanSize(int position) {
+				return position % 7 == 0 ? 2 : 1;
+			}
+		});
+		loadingHelper.setLayoutManager(gridLayoutManager);
+		final RecyclerAdapter wrapper = (RecyclerAdapter) recyclerView.getAdapter();
+		if ((decorations & DECORATION_HEADER) != 0) {
+			loadingHelper.setHeaderView(new View(this));
+		}
+		if ((decorations & DECORATION_FOOTER) != 0) {
+			loadingHelper.setFooterView(new View(this));
+		}
+		if ((decorations & DECORATION_TOP_LOADING) != 0) {
+			wrapper.showTopLoading(true);
+		}
+		if ((decorations & DECORATION_BOTTOM_LOADING) != 0) {
+			wrapper.showBottomLoading(true);
+		}
+		final GridLayoutManager.SpanSizeLookup spanSizeLookup =
+				((GridLayoutManager) recyclerView.getLayoutManager()).getSpanSizeLookup();
+		final int operations = Math.min(wrapper.getItemCount(), MAX_OPERATIONS);
+		//noinspection unchecked
+		final RecyclerView.ViewHolder viewHolder = wrapper.createViewHolder(recyclerView,
+				BenchmarkAdapter.TYPE_ITEM);
+		// the recycler view never lays out, so it would keep every notification as a pending
+		// update. The notifications of the wrapper are received by a counting observer instead.
+		recyclerView.setAdapter(null);
+		final CountingObserver observer = new CountingObserver();
+		wrapper.registerAdapterDataObserver(observer);
+		return new Runnable() {
+			@Override
+			public void run() {
+				report(size, decorations, "viewType", median(new Measure() {
+					@Override
+					long run() {
+						return measureItemViewType(wrapper, operations);
+					}
+				}), operations);
+				report(size, decorations, "itemCount", median(new Measure() {
+					@Override
+					long run() {
+						return measureItemCount(wrapper);
+					}
+				}), MAX_OPERATIONS);
+				report(size, decorations, "bind", median(new Measure() {
+					@Override
+					long run() {
+						return measureBind(wrapper, viewHolder, operations);
+					}
+				}), operations);
+				report(size, decorations, "spanSize", median(new Measure() {
+					@Override
+					long run() {
+						return measureSpanSize(spanSizeLookup, operations);
+					}
+				}), operations);
+				report(size, decorations, "spanIndex1", median(new Measure() {
+					@Override
+					long run() {
+						if (spanSizeLookup instanceof LoadingHelper.GridSpanSize) {
+							((LoadingHelper.GridSpanSize) spanSizeLookup).invalidateCache();
+						}
+						return measureSpanIndex(spanSizeLookup, operations);
+					}
+				}), operations);
+				report(size, decorations, "spanIndex2", median(new Measure() {
+					@Override
+					long run() {
+						return measureSpanIndex(spanSizeLookup, operations);
+					}
+				}), operations);
+				report(size, decorations, "notify", median(new Measure() {
+					@Override
+					long run() {
+						return measureNotify(adapter, size);
+					}
+				}), NOTIFICATIONS);
+				mSink += observer.mNotifications;
+			}
+		};
+	}
+
+	/**
+	 * @return The median time of the measured runs after the warm up runs
+	 */
+	private long median(Measure measure) {
+		for (int i = 0; i < WARM_UP_RUNS; i++) {
+			measure.run();
+		}
+		long[] times = new long[MEASURED_RUNS];
+		for (int i = 0; i < MEASURED_RUNS; i++) {
+			times[i] = measure.run();
+		}
+		Arrays.sort(times);
+		return times[MEASURED_RUNS / 2];
+	}
+
+	private long measureItemViewType(RecyclerAdapter wrapper, int operations) {
+		long start = System.nanoTime();
+		long sink = 0;
+		for (int i = 0; i < operations; i++) {
+			sink += wrapper.getItemViewType(i);
+		}
+		mSink += sink;
+		return System.nanoTime() - start;
+	}
+
+	private long measureItemCount(RecyclerAdapter wrapper) {
+		long start = System.nanoTime();
+		long sink = 0;
+		for (int i = 0; i < MAX_OPERATIONS; i++) {
+			sink += wrapper.getItemCount();
+		}
+		mSink += sink;
+		return System.nanoTime() - start;
+	}
+
+	private long measureBind(RecyclerAdapter wrapper, RecyclerView.ViewHolder viewHolder,
+							 int operations) {
+		long start = System.nanoTime();
+		for (int i = 0; i < operations; i++) {
+			if (wrapper.getItemViewType(i) == BenchmarkAdapter.TYPE_ITEM) {
+				//noinspection unchecked
+				wrapper.onBindViewHolder(viewHolder, i);
+			}
+		}
+		return System.nanoTime() - start;
+	}
+
+	private long measureSpanSize(GridLayoutManager.SpanSizeLookup lookup, int operations) {
+		long start = System.nanoTime();
+		long sink = 0;
+		for (int i = 0; i < operations; i++) {
+			sink += lookup.getSpanSize(i);
+		}
+		mSink += sink;
+		return System.nanoTime() - start;
+	}
+
+	private long measureSpanIndex(GridLayoutManager.SpanSizeLookup lookup, int operations) {
+		long start = System.nanoTime();
+		long sink = 0;
+		for (int i = 0; i < operations; i++) {
+			sink += lookup.getSpanIndex(i, SPAN_COUNT);
+		}
+		mSink += sink;
+		return System.nanoTime() - start;
+	}
+
+	private long measureNotify(BenchmarkAdapter adapter, int size) {
+		long start = System.nanoTime();
+		for (int i = 0; i < NOTIFICATIONS; i++) {
+			adapter.notifyItemRangeChanged(i % size, 1);
+		}
+		return System.nanoTime() - start;
+	}
+
+	/**
+	 * Displays the result of a path, it can be called from the background thread.
+	 */
+	private void report(int size, int decorations, String path, long nanos, int operations) {
+		final String line = String.format(Locale.US, "%-9d %-5d %-12s %10.1f", size, decorations,
+				path, (double) nanos / operations);
+		mHandler.post(new Runnable() {
+			@Override
+			public void run() {
+				log(line);
+			}
+		});
+	}
+
+	private void log(String line) {
+		Log.i(TAG, line);
+		mResults.append(line);
+		mResults.append("\n");
+	}
+
+	/**
+	 * Observer of the wrapper which only counts the notifications.
+	 */
+	private static class CountingObserver extends RecyclerView.AdapterDataObserver {
+
+		private long mNotifications;
+
+		@Override
+		public void onChanged() {
+			mNotifications++;
+		}
+
+		@Override
+		public void onItemRangeChanged(int positionStart, int itemCount) {
+			mNotifications++;
+		}
+
+		@Override
+		public void onItemRangeInserted(int positionStart, int itemCount) {
+			mNotifications++;
+		}
+
+		@Override
+		public void onItemRangeRemoved(int positionStart, int itemCount) {
+			mNotifications++;
+		}
+
+		@Override
+		public void onItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
+			mNotifications++;
+		}
+	}
+
+	/**
+	 * One run of a path.
+	 */
+	private abstract static class Measure {
+
+		/**
+		 * @return The time of the run in nanoseconds
+		 */
+		abstract long run();
+	}
+
+	/**
+	 * Adapter which does nothing in the binds.
+	 */
+	private static class BenchmarkAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
+
+		static final int TYPE_ITEM = 0;
+
+		private final int mSize;
+
+		BenchmarkAdapter(int size) {
+			mSize = size;
+		}
+
+		@Override
+		public RecyclerView.ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+			return new RecyclerView.ViewHolder(new View(parent.getContext())) {
+			};
+		}
+
+		@Override
+		public void onBindViewHolder(RecyclerView.ViewHolder holder, int position) {
+		}
+
+		@Override
+		public int getItemCount() {
+			return mSize;
+		}
+	}
+
+	private static class NoLoadListener implements LoadingHelper.LoadListener {
+
+		@Override
+		public void clearAdapter() {
+		}
+
+		@Override
+		public void loadPrevious() {
+		}
+
+		@Override
+		public void loadNext() {
+		}
+
+		@Override
+		public void loadInitial() {
+		}
+	}
+}
@@ -2,7 +2,6 @@ package com.livae.android.loading.test;
 
 import android.app.Fragment;
 import android.graphics.Color;
-import android.os.AsyncTask;
 import android.os.Bundle;
 import android.support.v4.widget.ContentLoadingProgressBar;
 import android.support.v7.widget.RecyclerView;
@@ -11,16 +10,14 @@ import android.view.View;
 import android.view.ViewGroup;
 import android.widget.TextView;
 
+import com.livae.android.loading.AsyncLoadListener;
 import com.livae.android.loading.LoadingHelper;
 
-public class ConcreteFragment extends Fragment implements LoadingHelper.LoadListener {
+public class ConcreteFragment extends Fragment {
 
 	private FakeAdapter mFakeAdapter;
 
 	private LoadingHelper<FakeViewHolder> mLoadingHelper;
-	private AsyncTask<Void, Void, Void> mAsyncTaskLoadInitial;
-	private AsyncTask<Void, Void, Void> mAsyncTaskLoadNext;
-	private AsyncTask<Void, Void, Void> mAsyncTaskLoadPrevious;
 
 	@Override
 	public View onCreateView(LayoutInflater inflater, ViewGroup container,
@@ -36,7 +33,8 @@ public class ConcreteFragment extends Fragment implements LoadingHelper.LoadList
 				.findViewById(R.id.center_progressbar);
 		mFakeAdapter = new FakeAdapter();
 		mLoadingHelper = new LoadingHelper<>(
-				getActivity(), recyclerView, mFakeAdapter, this, contentLoadingProgressBar,
+				getActivity(), recyclerView, mFakeAdapter, new FakeLoadListener(),
+				contentLoadingProgressBar,
 				new LoadingHelper.ErrorViewsCreator() {
 
 					@Override
@@ -95,108 +93,60 @@ public class ConcreteFragment extends Fragment implements LoadingHelper.LoadList
 		mLoadingHelper.onResume();
 	}
 
-	private void reset() {
-		if (mAsyncTaskLoadInitial != null) {
-			mAsyncTaskLoadInitial.cancel(true);
-			mAsyncTaskLoadInitial = null;
-		}
-		if (mAsyncTaskLoadNext != null) {
-			mAsyncTaskLoadNext.cancel(true);
-			mAsyncTaskLoadNext = null;
-		}
-		if (mAsyncTaskLoadPrevious != null) {
-			mAsyncTaskLoadPrevious.cancel(true);
-			mAsyncTaskLoadPrevious = null;
-		}
-		mLoadingHelper.reset();
+	@Override
+	public void onDestroyView() {
+		super.onDestroyView();
+		mLoadingHelper.onDestroy();
 	}
 
-	@Override
-	public void loadPrevious() {
-//		reset();
-		mAsyncTaskLoadPrevious = new AsyncTask<Void, Void, Void>() {
-			@Override
-			protected Void doInBackground(Void... params) {
-				try {
-					Thread.sleep(1000);
-				} catch (InterruptedException e) {
-					e.printStackTrace();
-				}
-				return null;
-			}
+	class FakeLoadListener extends AsyncLoadListener<Integer> {
 
-			@Override
-			protected void onPostExecute(Void aVoid) {
-				super.onPostExecute(aVoid);
-				if (Math.random() < 0.4) {
-					mLoadingHelper.finishLoadingPrevious(true, 0);
-				} else {
-					mFakeAdapter.preadd(2);
-					mLoadingHelper.finishLoadingPrevious(false, 2);
-				}
-				mLoadingHelper.enableEndlessLoading(true);
+		private Integer fakeLoad(int items) throws Exception {
+			Thread.sleep(1000);
+			if (Math.random() < 0.4) {
+				throw new Exception("fake error");
 			}
-		};
-		mAsyncTaskLoadPrevious.execute();
-	}
+			return items;
+		}
 
-	@Override
-	public void loadNext() {
-		mAsyncTaskLoadNext = new AsyncTask<Void, Void, Void>() {
-			@Override
-			protected Void doInBackground(Void... params) {
-				try {
-					Thread.sleep(1000);
-				} catch (InterruptedException e) {
-					e.printStackTrace();
-				}
-				return null;
-			}
+		@Override
+		protected Integer doLoadInitial() throws Exception {
+			return fakeLoad(10);
+		}
 
-			@Override
-			protected void onPostExecute(Void aVoid) {
-				super.onPostExecute(aVoid);
-				if (Math.random() < 0.4) {
-					mLoadingHelper.finishLoadingNext(true, 0, true);
-				} else {
-					mFakeAdapter.add(2);
-					mLoadingHelper.finishLoadingNext(false, 2, true);
-				}
-			}
-		};
-		mAsyncTaskLoadNext.execute();
-	}
+		@Override
+		protected Integer doLoadNext() throws Exception {
+			return fakeLoad(2);
+		}
 
-	@Override
-	public void loadInitial() {
-		mAsyncTaskLoadInitial = new AsyncTask<Void, Void, Void>() {
-			@Override
-			protected Void doInBackground(Void... params) {
-				try {
-					Thread.sleep(1000);
-				} catch (InterruptedException e) {
-					e.printStackTrace();
-				}
-				return null;
-			}
+		@Override
+		protected Integer doLoadPrevious() throws Exception {
+			return fakeLoad(2);
+		}
 
-			@Override
-			protected void onPostExecute(Void aVoid) {
-				super.onPostExecute(aVoid);
-				if (Math.random() < 0.4) {
-					mLoadingHelper.finishLoadingInitial(true, 0, true);
-				} else {
-					mFakeAdapter.add(10);
-					mLoadingHelper.finishLoadingInitial(false, 10, true);
-				}
-			}
-		};
-		mAsyncTaskLoadInitial.execute();
-	}
+		@Override
+		protected int applyInitial(Integer items) {
+			mFakeAdapter.add(items);
+			return items;
+		}
 
-	@Override
-	public void clearAdapter() {
-		mFakeAdapter.clear();
+		@Override
+		protected int applyNext(Integer items) {
+			mFakeAdapter.add(items);
+			return items;
+		}
+
+		@Override
+		protected int applyPrevious(Integer items) {
+			mFakeAdapter.preadd(items);
+			mLoadingHelper.enableEndlessLoading(true);
+			return items;
+		}
+
+		@Override
+		public void clearAdapter() {
+			mFakeAdapter.clear();
+		}
 	}
 
 	class FakeViewHolder extends RecyclerView.ViewHolder {
@@ -0,0 +1,364 @@
+package com.livae.android.loading.test;
+
+import android.app.Activity;
+import android.content.Context;
+import android.graphics.Typeface;
+import android.os.Bundle;
+import android.os.Debug;
+import android.support.v4.view.ViewCompat;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.util.Log;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.LinearLayout;
+import android.widget.TextView;
+
+import com.livae.android.loading.LoadingHelper;
+import com.livae.android.loading.RecyclerAdapter;
+
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Simulation of the endless loading under scroll patterns with flings, drags and pauses. The time
+ * is counted in frames: the scroll of each frame and the latency of the load listener are fixed
+ * numbers of frames, the clock of the loading helper used by the adaptive preload advances a fixed
+ * time per frame and the errors come from a random generator with a fixed seed, so the results do
+ * not depend on the speed of the device. They depend on the height of the screen, which sets the
+ * number of visible items, so only compare results from the same device. For each strategy it
+ * reports the calls to loadNext, the pages loaded which the user never reached, the notifications
+ * of the adapter, the layout passes, the frames the bottom loading view was visible and the objects
+ * allocated by the main thread per frame while scrolling, without counting the warm up and the
+ * frames where a load finished. The results are displayed and written to the log with the tag
+ * "LoadingSimulation".
+ * <p/>
+ * Run it with: adb shell am start -n com.livae.android.loading.test/.ScrollSimulationActivity
+ */
+public class ScrollSimulationActivity extends Activity {
+
+	private static final String TAG = "LoadingSimulation";
+
+	private static final int FRAMES = 900;
+	private static final int PAGE_SIZE = 20;
+	private static final int ITEM_HEIGHT_DP = 48;
+	private static final long SEED = 42;
+	private static final int WARM_UP_FRAMES = 60;
+	private static final long FRAME_MILLIS = 16;
+
+	private static final Scenario[] SCENARIOS = {
+			new Scenario("preload 0", 0, 0, 20, 0),
+			new Scenario("preload 10", 10, 0, 20, 0),
+			new Scenario("adaptive 2-40", 2, 40, 20, 0),
+			new Scenario("preload 10 slow", 10, 0, 60, 0),
+			new Scenario("adaptive slow", 2, 40, 60, 0),
+			new Scenario("preload 10 errors", 10, 0, 20, 0.2f),
+	};
+
+	private LinearLayout mContainer;
+	private TextView mResults;
+	private int mScenario;
+	private float mDensity;
+
+	@Override
+	protected void onCreate(Bundle savedInstanceState) {
+		super.onCreate(savedInstanceState);
+		mDensity = getResources().getDisplayMetrics().density;
+		mContainer = new LinearLayout(this);
+		mContainer.setOrientation(LinearLayout.VERTICAL);
+		mResults = new TextView(this);
+		mResults.setTypeface(Typeface.MONOSPACE);
+		mContainer.addView(mResults, new LinearLayout.LayoutParams(
+				ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.WRAP_CONTENT));
+		setContentView(mContainer);
+		log(String.format(Locale.US, "%-18s %6s %6s %7s %7s %8s %7s", "strategy", "loads",
+				"wasted", "notify", "layout", "spinner", "alloc/f"));
+		runNextScenario();
+	}
+
+	private void runNextScenario() {
+		if (mScenario < SCENARIOS.length) {
+			new Simulation(SCENARIOS[mScenario++]).start();
+		} else {
+			log("done");
+		}
+	}
+
+	private void log(String line) {
+		Log.i(TAG, line);
+		mResults.append(line);
+		mResults.append("\n");
+	}
+
+	/**
+	 * Runs one scenario, one step per animation frame.
+	 */
+	private class Simulation implements Runnable, LoadingHelper.LoadListener,
+										LoadingHelper.Clock {
+
+		private final Scenario mScenario;
+		private final Random mRandom;
+		private final CountingRecyclerView mRecyclerView;
+		private final SimulationAdapter mAdapter;
+		private final LoadingHelper<RecyclerView.ViewHolder> mLoadingHelper;
+		private final RecyclerAdapter mWrapper;
+		private final LinearLayoutManager mLayoutManager;
+		private int mFrame;
+		private int mPendingLoadFrame;
+		private boolean mPendingInitial;
+		private int mLoadNextCalls;
+		private int mNotifications;
+		private int mSpinnerFrames;
+		private int mMaxVisiblePosition;
+		private float mVelocity;
+		private boolean mLoadFinished;
+		private long mAllocations;
+		private int mAllocationFrames;
+
+		Simulation(Scenario scenario) {
+			mScenario = scenario;
+			mRandom = new Random(SEED);
+			mPendingLoadFrame = -1;
+			mRecyclerView = new CountingRecyclerView(ScrollSimulationActivity.this);
+			mAdapter = new SimulationAdapter((int) (ITEM_HEIGHT_DP * mDensity));
+			mLoadingHelper = new LoadingHelper<>(ScrollSimulationActivity.this, mRecyclerView,
+					mAdapter, this, null, null);
+			mLayoutManager = new LinearLayoutManager(ScrollSimulationActivity.this);
+			mLoadingHelper.setLayoutManager(mLayoutManager);
+			mLoadingHelper.setClock(this);
+			mLoadingHelper.enableEndlessLoading(true);
+			if (scenario.mAdaptiveMax > 0) {
+				mLoadingHelper.endlessLoadingAdaptivePreload(scenario.mPreload,
+						scenario.mAdaptiveMax);
+			} else {
+				mLoadingHelper.endlessLoadingPreloadAhead(scenario.mPreload);
+			}
+			mWrapper = (RecyclerAdapter) mRecyclerView.getAdapter();
+			mWrapper.registerAdapterDataObserver(new RecyclerView.AdapterDataObserver() {
+				@Override
+				public void onChanged() {
+					mNotifications++;
+				}
+
+				@Override
+				public void onItemRangeChanged(int positionStart, int itemCount) {
+					mNotifications++;
+				}
+
+				@Override
+				public void onItemRangeInserted(int positionStart, int itemCount) {
+					mNotifications++;
+				}
+
+				@Override
+				public void onItemRangeRemoved(int positionStart, int itemCount) {
+					mNotifications++;
+				}
+
+				@Override
+				public void onItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
+					mNotifications++;
+				}
+			});
+		}
+
+		void start() {
+			if (mContainer.getChildCount() > 1) {
+				mContainer.removeViewAt(1);
+			}
+			mContainer.addView(mRecyclerView, new LinearLayout.LayoutParams(
+					ViewGroup.LayoutParams.MATCH_PARENT, 0, 1));
+			mLoadingHelper.start();
+			Debug.startAllocCounting();
+			ViewCompat.postOnAnimation(mRecyclerView, this);
+		}
+
+		@Override
+		public void run() {
+			// the allocations since the previous frame, including the check and the layout
+			if (mFrame > WARM_UP_FRAMES && !mLoadFinished) {
+				mAllocations += Debug.getThreadAllocCount();
+				mAllocationFrames++;
+			}
+			mFrame++;
+			mLoadFinished = false;
+			if (mPendingLoadFrame >= 0 && mFrame >= mPendingLoadFrame) {
+				mPendingLoadFrame = -1;
+				mLoadFinished = true;
+				finishLoad();
+			}
+			int dy = getScroll(mFrame);
+			if (dy != 0) {
+				mRecyclerView.scrollBy(0, dy);
+			}
+			int lastVisible = mLayoutManager.findLastVisibleItemPosition();
+			// the bottom loading and error views are not items of a page
+			int lastVisibleItem = Math.min(lastVisible, mAdapter.getItemCount() - 1);
+			mMaxVisiblePosition = Math.max(mMaxVisiblePosition, lastVisibleItem);
+			if (mWrapper.isShowBottomLoading() && lastVisible == mWrapper.getItemCount() - 1) {
+				mSpinnerFrames++;
+			}
+			if (mFrame < FRAMES) {
+				Debug.resetThreadAllocCount();
+				ViewCompat.postOnAnimation(mRecyclerView, this);
+			} else {
+				Debug.stopAllocCounting();
+				report();
+				mLoadingHelper.onDestroy();
+				runNextScenario();
+			}
+		}
+
+		/**
+		 * The time of the simulation, it starts in the first frame.
+		 */
+		@Override
+		public long uptimeMillis() {
+			return (mFrame + 1) * FRAME_MILLIS;
+		}
+
+		/**
+		 * Scroll pattern in pixels: flings which slow down and stop, slow drags and pauses.
+		 */
+		private int getScroll(int frame) {
+			int cycleFrame = frame % 180;
+			if (cycleFrame == 0) {
+				mVelocity = 150 * mDensity;
+			}
+			if (cycleFrame < 60) {
+				// fling
+				mVelocity *= 0.95f;
+				return (int) mVelocity;
+			} else if (cycleFrame < 120) {
+				// drag
+				return (int) (6 * mDensity);
+			} else {
+				// pause
+				return 0;
+			}
+		}
+
+		private void finishLoad() {
+			if (mPendingInitial) {
+				mAdapter.addItems(PAGE_SIZE);
+				mLoadingHelper.finishLoadingInitial(false, PAGE_SIZE, true);
+			} else {
+				boolean error = mRandom.nextFloat() < mScenario.mErrorRate;
+				if (!error) {
+					mAdapter.addItems(PAGE_SIZE);
+				}
+				mLoadingHelper.finishLoadingNext(error, error ? 0 : PAGE_SIZE, !error);
+			}
+		}
+
+		private void report() {
+			int pages = mAdapter.getItemCount() / PAGE_SIZE;
+			// the page of the last item reached is reached too
+			int reachedPages = (mMaxVisiblePosition + PAGE_SIZE) / PAGE_SIZE;
+			float allocations = 0;
+			if (mAllocationFrames > 0) {
+				allocations = (float) mAllocations / mAllocationFrames;
+			}
+			log(String.format(Locale.US, "%-18s %6d %6d %7d %7d %8d %7.1f", mScenario.mName,
+					mLoadNextCalls, Math.max(0, pages - reachedPages), mNotifications,
+					mRecyclerView.mLayoutCount, mSpinnerFrames, allocations));
+		}
+
+		@Override
+		public void clearAdapter() {
+			mAdapter.clear();
+		}
+
+		@Override
+		public void loadPrevious() {
+			mLoadingHelper.finishLoadingPrevious(false, 0);
+		}
+
+		@Override
+		public void loadNext() {
+			mLoadNextCalls++;
+			mPendingInitial = false;
+			mPendingLoadFrame = mFrame + mScenario.mLatencyFrames;
+		}
+
+		@Override
+		public void loadInitial() {
+			mPendingInitial = true;
+			mPendingLoadFrame = mFrame + mScenario.mLatencyFrames;
+		}
+	}
+
+	private static class Scenario {
+
+		final String mName;
+		final int mPreload;
+		final int mAdaptiveMax;
+		final int mLatencyFrames;
+		final float mErrorRate;
+
+		Scenario(String name, int preload, int adaptiveMax, int latencyFrames, float errorRate) {
+			mName = name;
+			mPreload = preload;
+			mAdaptiveMax = adaptiveMax;
+			mLatencyFrames = latencyFrames;
+			mErrorRate = errorRate;
+		}
+	}
+
+	/**
+	 * Recycler view which counts the layout passes.
+	 */
+	private static class CountingRecyclerView extends RecyclerView {
+
+		int mLayoutCount;
+
+		CountingRecyclerView(Context context) {
+			super(context);
+		}
+
+		@Override
+		protected void onLayout(boolean changed, int l, int t, int r, int b) {
+			mLayoutCount++;
+			super.onLayout(changed, l, t, r, b);
+		}
+	}
+
+	/**
+	 * Adapter with items of the same height.
+	 */
+	private static class SimulationAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
+
+		private final int mItemHeight;
+		private int mCount;
+
+		SimulationAdapter(int itemHeight) {
+			mItemHeight = itemHeight;
+		}
+
+		void addItems(int count) {
+			mCount += count;
+		}
+
+		void clear() {
+			mCount = 0;
+		}
+
+		@Override
+		public RecyclerView.ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+			View view = new View(parent.getContext());
+			view.setLayoutParams(new RecyclerView.LayoutParams(
+					ViewGroup.LayoutParams.MATCH_PARENT, mItemHeight));
+			return new RecyclerView.ViewHolder(view) {
+			};
+		}
+
+		@Override
+		public void onBindViewHolder(RecyclerView.ViewHolder holder, int position) {
+		}
+
+		@Override
+		public int getItemCount() {
+			return mCount;
+		}
+	}
+}
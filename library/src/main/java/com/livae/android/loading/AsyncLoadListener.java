@@ -0,0 +1,332 @@
+package com.livae.android.loading;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Load listener which loads the items in a background thread and applies them to the adapter in
+ * the main thread. The loads run in a shared executor with a bounded number of threads and they are
+ * cancelled when the loading helper is reset or destroyed, so the results of the loads which are
+ * not needed anymore are never applied.
+ * <p/>
+ * The load methods are called in a background thread and must return the loaded data, or throw an
+ * exception if the load fails, in which case the error view is displayed. The apply methods are
+ * called in the main thread with the loaded data, they must add the data to the adapter and return
+ * the number of items inserted. The endless loading stops when no items are inserted.
+ *
+ * @param <T> Type of the data loaded
+ */
+public abstract class AsyncLoadListener<T> implements LoadingHelper.LoadListener {
+
+	private static final int MAX_THREADS = 2;
+	private static final int KEEP_ALIVE_SECONDS = 30;
+	static final int LOAD_INITIAL = 0;
+	static final int LOAD_NEXT = 1;
+	static final int LOAD_PREVIOUS = 2;
+
+	private static final ThreadFactory THREAD_FACTORY = new ThreadFactory() {
+		private final AtomicInteger mCount = new AtomicInteger(1);
+
+		@Override
+		public Thread newThread(final Runnable runnable) {
+			return new Thread(new Runnable() {
+				@Override
+				public void run() {
+					Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+					runnable.run();
+				}
+			}, "LoadingHelper #" + mCount.getAndIncrement());
+		}
+	};
+
+	private static ExecutorService sExecutor;
+
+	private final Handler mHandler;
+	private final Future<?>[] mFutures;
+	private final LoadTask[] mTasks;
+	private LoadingHelper mLoadingHelper;
+
+	public AsyncLoadListener() {
+		mHandler = new Handler(Looper.getMainLooper());
+		mFutures = new Future<?>[3];
+		mTasks = new AsyncLoadListener.LoadTask[3];
+	}
+
+	/**
+	 * @return The shared executor where the loads are performed
+	 */
+	protected static synchronized ExecutorService getExecutor() {
+		if (sExecutor == null) {
+			ThreadPoolExecutor executor = new ThreadPoolExecutor(MAX_THREADS, MAX_THREADS,
+					KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+					THREAD_FACTORY);
+			executor.allowCoreThreadTimeOut(true);
+			sExecutor = executor;
+		}
+		return sExecutor;
+	}
+
+	void setLoadingHelper(LoadingHelper loadingHelper) {
+		mLoadingHelper = loadingHelper;
+	}
+
+	LoadingHelper getLoadingHelper() {
+		return mLoadingHelper;
+	}
+
+	/**
+	 * Cancels all the loads in progress. Their results will not be applied. It is called by the
+	 * loading helper when it is reset or destroyed.
+	 *
+	 * @see LoadingHelper#reset()
+	 * @see LoadingHelper#onDestroy()
+	 */
+	public void cancelLoads() {
+		for (int i = 0; i < mFutures.length; i++) {
+			cancelLoad(i);
+		}
+	}
+
+	private void cancelLoad(int loadType) {
+		if (mFutures[loadType] != null) {
+			mFutures[loadType].cancel(true);
+			mFutures[loadType] = null;
+		}
+		mTasks[loadType] = null;
+	}
+
+	@Override
+	public final void loadInitial() {
+		bindCachedInitial();
+		startLoad(LOAD_INITIAL);
+	}
+
+	@Override
+	public final void loadNext() {
+		startLoad(LOAD_NEXT);
+	}
+
+	@Override
+	public final void loadPrevious() {
+		startLoad(LOAD_PREVIOUS);
+	}
+
+	private void startLoad(int loadType) {
+		if (mLoadingHelper == null) {
+			throw new RuntimeException("The listener is not attached to a loading helper");
+		}
+		cancelLoad(loadType);
+		LoadTask task = new LoadTask(loadType, mLoadingHelper.getLoadGeneration());
+		mTasks[loadType] = task;
+		mFutures[loadType] = getExecutor().submit(task);
+	}
+
+	private void finishLoad(LoadTask task, T data, Exception error) {
+		int loadType = task.mLoadType;
+		if (mTasks[loadType] != task) {
+			// the load was cancelled
+			return;
+		}
+		mTasks[loadType] = null;
+		mFutures[loadType] = null;
+		if (!mLoadingHelper.isLoadGenerationCurrent(task.mLoadGeneration)) {
+			// the loading helper was reset after the load started
+			return;
+		}
+		if (error != null) {
+			onLoadError(error);
+		} else {
+			onDataLoaded(loadType, data, task.mFromFallback);
+		}
+		switch (loadType) {
+			case LOAD_INITIAL:
+				if (revalidateInitial(data, error)) {
+					break;
+				}
+				if (error != null) {
+					mLoadingHelper.finishLoadingInitial(true, 0, false);
+				} else {
+					int inserted = applyInitial(data);
+					mLoadingHelper.finishLoadingInitial(false, inserted, inserted > 0);
+				}
+				break;
+			case LOAD_NEXT:
+				if (error != null) {
+					mLoadingHelper.finishLoadingNext(true, 0, false);
+				} else {
+					int inserted = applyNext(data);
+					mLoadingHelper.finishLoadingNext(false, inserted, inserted > 0);
+				}
+				break;
+			case LOAD_PREVIOUS:
+				if (error != null) {
+					mLoadingHelper.finishLoadingPrevious(true, 0);
+				} else {
+					int inserted = applyPrevious(data);
+					mLoadingHelper.finishLoadingPrevious(false, inserted, inserted > 0);
+				}
+				break;
+		}
+	}
+
+	/**
+	 * Called in the main thread before the initial load starts. It can finish the initial load
+	 * with cached items, which are revalidated when the load finishes.
+	 *
+	 * @see #revalidateInitial(Object, Exception)
+	 */
+	void bindCachedInitial() {
+	}
+
+	/**
+	 * Called in the main thread when the initial load finishes.
+	 *
+	 * @param data  The data loaded or null if the load failed
+	 * @param error The exception thrown by the load or null
+	 * @return true if the initial load was already finished with cached items and the result was
+	 * used to update them
+	 * @see #bindCachedInitial()
+	 */
+	boolean revalidateInitial(T data, Exception error) {
+		return false;
+	}
+
+	/**
+	 * Called in a background thread when a load fails. It can return other data to use instead,
+	 * for example data stored in the disk.
+	 *
+	 * @param loadType The type of the load
+	 * @param error    The exception thrown by the load
+	 * @return The data to use or null to display the error view
+	 */
+	T loadFallback(int loadType, Exception error) {
+		return null;
+	}
+
+	/**
+	 * Called in the main thread when a load finishes without errors, before the data is applied.
+	 *
+	 * @param loadType     The type of the load
+	 * @param data         The data loaded
+	 * @param fromFallback whether the data was returned by #loadFallback(int, Exception)
+	 */
+	void onDataLoaded(int loadType, T data, boolean fromFallback) {
+	}
+
+	/**
+	 * Called in the main thread when a load fails, before the error view is displayed.
+	 *
+	 * @param error The exception thrown by the load
+	 */
+	protected void onLoadError(Exception error) {
+	}
+
+	/**
+	 * Loads the initial items. It is called in a background thread.
+	 *
+	 * @return The data loaded
+	 * @throws Exception if the load fails
+	 */
+	protected abstract T doLoadInitial() throws Exception;
+
+	/**
+	 * Loads the next items. It is called in a background thread.
+	 *
+	 * @return The data loaded
+	 * @throws Exception if the load fails
+	 */
+	protected abstract T doLoadNext() throws Exception;
+
+	/**
+	 * Loads the previous items. It is called in a background thread.
+	 *
+	 * @return The data loaded
+	 * @throws Exception if the load fails
+	 */
+	protected abstract T doLoadPrevious() throws Exception;
+
+	/**
+	 * Adds the initial items to the adapter. It is called in the main thread.
+	 *
+	 * @param data The data loaded
+	 * @return The number of items inserted at the end of the adapter
+	 */
+	protected abstract int applyInitial(T data);
+
+	/**
+	 * Adds the next items to the adapter. It is called in the main thread.
+	 *
+	 * @param data The data loaded
+	 * @return The number of items inserted at the end of the adapter
+	 */
+	protected abstract int applyNext(T data);
+
+	/**
+	 * Adds the previous items to the adapter. It is called in the main thread.
+	 *
+	 * @param data The data loaded
+	 * @return The number of items inserted at the beginning of the adapter
+	 */
+	protected abstract int applyPrevious(T data);
+
+	private class LoadTask implements Runnable {
+
+		private final int mLoadType;
+		private final int mLoadGeneration;
+		private boolean mFromFallback;
+
+		LoadTask(int loadType, int loadGeneration) {
+			mLoadType = loadType;
+			mLoadGeneration = loadGeneration;
+		}
+
+		@Override
+		public void run() {
+			T data = null;
+			Exception error = null;
+			try {
+				switch (mLoadType) {
+					case LOAD_INITIAL:
+						data = doLoadInitial();
+						break;
+					case LOAD_NEXT:
+						data = doLoadNext();
+						break;
+					case LOAD_PREVIOUS:
+						data = doLoadPrevious();
+						break;
+				}
+			} catch (InterruptedException e) {
+				// cancelled
+				return;
+			} catch (Exception e) {
+				data = loadFallback(mLoadType, e);
+				if (data == null) {
+					error = e;
+				} else {
+					mFromFallback = true;
+				}
+			}
+			if (Thread.interrupted()) {
+				return;
+			}
+			final T result = data;
+			final Exception resultError = error;
+			mHandler.post(new Runnable() {
+				@Override
+				public void run() {
+					finishLoad(LoadTask.this, result, resultError);
+				}
+			});
+		}
+	}
+}
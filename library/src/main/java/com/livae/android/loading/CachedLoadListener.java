@@ -0,0 +1,244 @@
+package com.livae.android.loading;
+
+import android.support.annotation.NonNull;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Asynchronous load listener which keeps the initial page of the feed in the PageCache. When the
+ * initial page is in the cache it is displayed immediately, without the initial loading view, and
+ * it is revalidated with the initial load in the background. When the load finishes only the
+ * items which are different are replaced and notified to the recycler view.
+ * <p/>
+ * The items are compared with equals. The revalidated items are the cached items in the adapter,
+ * after the previous items loaded during the revalidation. The next items are not loaded until
+ * the revalidation finishes unless the user scrolls to the end. The pages can also be written in a DiskPageStore to display them on a cold start. The
+ * stored pages are numbered from the initial page, so after the previous items are loaded the
+ * next stored pages are discarded and they are not used until the next initial load.
+ *
+ * @param <E> Type of the items loaded
+ * @see PageCache
+ */
+public abstract class CachedLoadListener<E> extends AsyncLoadListener<List<E>> {
+
+	private final String mCacheKey;
+	private List<E> mCachedItems;
+	private DiskPageStore<E> mPageStore;
+	private volatile int mLoadedPages;
+	private volatile boolean mPagesAligned;
+
+	/**
+	 * @param cacheKey Key of the feed in the cache
+	 */
+	public CachedLoadListener(@NonNull String cacheKey) {
+		mCacheKey = cacheKey;
+	}
+
+	/**
+	 * Sets a store where the initial and the next pages are written. On a cold start, when the
+	 * initial page is not in the memory cache, it is read from the store. When the next items
+	 * cannot be loaded the stored pages are used, so the user can keep scrolling offline. When the
+	 * fresh initial page is different from the stored one the next stored pages are discarded.
+	 *
+	 * @param pageStore The store of the pages or null
+	 */
+	public void setPageStore(DiskPageStore<E> pageStore) {
+		mPageStore = pageStore;
+	}
+
+	/**
+	 * @return The key of the feed in the cache
+	 */
+	public String getCacheKey() {
+		return mCacheKey;
+	}
+
+	@Override
+	void bindCachedInitial() {
+		mCachedItems = null;
+		mLoadedPages = 0;
+		mPagesAligned = false;
+		List<E> cachedItems = PageCache.get(mCacheKey);
+		if (cachedItems == null && mPageStore != null) {
+			try {
+				List<E> storedItems = mPageStore.readPage(0);
+				if (storedItems != null) {
+					// the stored page cannot be modified and it decodes the items on each access
+					cachedItems = new ArrayList<>(storedItems);
+				}
+			} catch (IOException | RuntimeException e) {
+				// the store is only a cache, a page which cannot be read or decoded is loaded
+			}
+		}
+		if (cachedItems != null) {
+			mCachedItems = cachedItems;
+			mLoadedPages = 1;
+			mPagesAligned = true;
+			int inserted = applyInitial(new ArrayList<>(cachedItems));
+			// the next items are loaded after the revalidation
+			getLoadingHelper().finishLoadingInitial(false, inserted, false);
+		}
+	}
+
+	@Override
+	boolean revalidateInitial(List<E> data, Exception error) {
+		if (error == null && data != null) {
+			PageCache.put(mCacheKey, data);
+		}
+		List<E> cachedItems = mCachedItems;
+		if (cachedItems == null) {
+			return false;
+		}
+		mCachedItems = null;
+		if (error == null && data != null) {
+			// previous items can be inserted or the first items evicted during the revalidation
+			int offset = getLoadingHelper().getItemsBeforeInitial();
+			if (offset >= 0) {
+				replaceDifferences(offset, cachedItems, data);
+			} else if (-offset < cachedItems.size()) {
+				// the evicted items are loaded again with the previous items, only the items which
+				// are still in the adapter are revalidated
+				int evicted = -offset;
+				replaceDifferences(0, cachedItems.subList(evicted, cachedItems.size()),
+						data.subList(Math.min(evicted, data.size()), data.size()));
+			}
+		}
+		// the bottom error view lets the user retry when the revalidation failed
+		getLoadingHelper().continueLoadingNext(error != null);
+		return true;
+	}
+
+	@Override
+	List<E> loadFallback(int loadType, Exception error) {
+		DiskPageStore<E> pageStore = mPageStore;
+		if (loadType != LOAD_NEXT || pageStore == null || !mPagesAligned) {
+			return null;
+		}
+		try {
+			List<E> storedItems = pageStore.readPage(mLoadedPages);
+			// the items are decoded here instead of in the main thread when they are applied
+			return storedItems != null ? new ArrayList<>(storedItems) : null;
+		} catch (IOException | RuntimeException e) {
+			return null;
+		}
+	}
+
+	@Override
+	void onDataLoaded(int loadType, List<E> data, boolean fromFallback) {
+		switch (loadType) {
+			case LOAD_INITIAL:
+				boolean stored = mCachedItems != null && mCachedItems.equals(data);
+				if (mCachedItems == null) {
+					// the next items loaded while the cached page was revalidated are counted
+					mLoadedPages = 1;
+					mPagesAligned = true;
+				}
+				storePage(0, data, !stored);
+				break;
+			case LOAD_NEXT:
+				int page = mLoadedPages++;
+				if (!fromFallback && mPagesAligned) {
+					storePage(page, data, false);
+				}
+				break;
+			case LOAD_PREVIOUS:
+				if (mPagesAligned) {
+					// the stored pages do not match the positions of the items anymore, the pages
+					// evicted from the bottom are loaded again as next pages too
+					mPagesAligned = false;
+					truncatePages(1);
+				}
+				break;
+		}
+	}
+
+	/**
+	 * Writes a page in the store in a background thread.
+	 *
+	 * @param page     Index of the page
+	 * @param items    Items of the page
+	 * @param truncate whether to discard the next stored pages or not
+	 */
+	private void storePage(final int page, List<E> items, final boolean truncate) {
+		final DiskPageStore<E> pageStore = mPageStore;
+		if (pageStore == null) {
+			return;
+		}
+		final List<E> pageItems = new ArrayList<>(items);
+		getExecutor().execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					if (truncate) {
+						pageStore.truncate(page + 1);
+					}
+					pageStore.writePage(page, pageItems);
+				} catch (IOException e) {
+					// the store is only a cache, the page is not written
+				}
+			}
+		});
+	}
+
+	/**
+	 * Discards the stored pages after the first ones in a background thread.
+	 *
+	 * @param pageCount Number of pages to keep
+	 */
+	private void truncatePages(final int pageCount) {
+		final DiskPageStore<E> pageStore = mPageStore;
+		if (pageStore == null) {
+			return;
+		}
+		getExecutor().execute(new Runnable() {
+			@Override
+			public void run() {
+				pageStore.truncate(pageCount);
+			}
+		});
+	}
+
+	/**
+	 * Replaces the items between the common items at the start and at the end of both lists.
+	 *
+	 * @param position Position of the first old item in the adapter
+	 * @param oldItems Items in the adapter
+	 * @param newItems Items which replace them
+	 */
+	private void replaceDifferences(int position, List<E> oldItems, List<E> newItems) {
+		int oldSize = oldItems.size();
+		int newSize = newItems.size();
+		int start = 0;
+		while (start < oldSize && start < newSize
+			   && equals(oldItems.get(start), newItems.get(start))) {
+			start++;
+		}
+		int end = 0;
+		while (end < oldSize - start && end < newSize - start
+			   && equals(oldItems.get(oldSize - 1 - end), newItems.get(newSize - 1 - end))) {
+			end++;
+		}
+		int oldCount = oldSize - start - end;
+		int newCount = newSize - start - end;
+		if (oldCount > 0 || newCount > 0) {
+			replaceItems(position + start, oldCount, newItems.subList(start, start + newCount));
+			getLoadingHelper().notifyDataItemsReplaced(position + start, oldCount, newCount);
+		}
+	}
+
+	private static boolean equals(Object a, Object b) {
+		return a == null ? b == null : a.equals(b);
+	}
+
+	/**
+	 * Replaces items of the adapter with the revalidated items. It is called in the main thread
+	 * and the adapter must not be notified, the loading helper notifies the changes.
+	 *
+	 * @param position Position of the first item to replace
+	 * @param count    Number of items to remove
+	 * @param items    Items to insert in the position
+	 */
+	protected abstract void replaceItems(int position, int count, List<E> items);
+}
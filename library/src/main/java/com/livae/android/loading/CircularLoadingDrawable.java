@@ -1,22 +1,37 @@
 package com.livae.android.loading;
 
+import android.annotation.TargetApi;
 import android.content.Context;
 import android.content.res.Resources;
 import android.graphics.Canvas;
 import android.graphics.ColorFilter;
 import android.graphics.Paint;
+import android.graphics.PixelFormat;
 import android.graphics.Rect;
 import android.graphics.RectF;
+import android.graphics.drawable.Animatable;
 import android.graphics.drawable.Drawable;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.util.TypedValue;
+import android.view.Choreographer;
+
+import java.util.ArrayList;
 
 /**
- * Simple circular loading drawable with progression.
+ * Simple circular loading drawable with progression. In indeterminate mode it draws a rotating
+ * arc, all the running drawables are animated from the same frame callback and they stop when
+ * they are not visible.
  */
-public class CircularLoadingDrawable extends Drawable {
+public class CircularLoadingDrawable extends Drawable implements Animatable {
 
 	private static final int MAXIMUM_LEVEL = 10000;
 	private static final int LINE_WIDTH_DP = 4;
+	private static final long ROTATION_DURATION_NANOS = 1333000000L;
+	private static final float MIN_SWEEP = 20;
+	private static final float MAX_SWEEP = 290;
 	private float mProgress = 0;
 	private Paint mPaint;
 
@@ -27,6 +42,12 @@ public class CircularLoadingDrawable extends Drawable {
 	private int mColor;
 	private int mColorActive;
 
+	private boolean mIndeterminate;
+	private boolean mRunning;
+	private long mStartTimeNanos;
+	private float mRotation;
+	private float mSweep;
+
 	public CircularLoadingDrawable(Context context, int color, int colorActive) {
 		mPaint = new Paint();
 		Resources resources = context.getResources();
@@ -41,6 +62,49 @@ public class CircularLoadingDrawable extends Drawable {
 		mColorActive = colorActive;
 		mPaint.setColor(mColor);
 		mArcBounds = new RectF();
+		mSweep = MIN_SWEEP;
+	}
+
+	/**
+	 * Sets the indeterminate mode. In this mode the drawable draws a rotating arc while it is
+	 * running instead of the progress.
+	 *
+	 * @param indeterminate whether the drawable is indeterminate or not
+	 * @see #start()
+	 */
+	public void setIndeterminate(boolean indeterminate) {
+		if (mIndeterminate != indeterminate) {
+			mIndeterminate = indeterminate;
+			if (indeterminate) {
+				mPaint.setColor(mColorActive);
+			} else {
+				stop();
+				mPaint.setColor(mProgress == 1 ? mColorActive : mColor);
+			}
+			invalidateSelf();
+		}
+	}
+
+	/**
+	 * Changes the colors of the drawable.
+	 *
+	 * @param color       Color of the progress
+	 * @param colorActive Color of the progress when it is complete and in indeterminate mode
+	 */
+	public void setColors(int color, int colorActive) {
+		if (mColor != color || mColorActive != colorActive) {
+			mColor = color;
+			mColorActive = colorActive;
+			mPaint.setColor(mIndeterminate || mProgress == 1 ? mColorActive : mColor);
+			invalidateSelf();
+		}
+	}
+
+	/**
+	 * @return true if the drawable is in indeterminate mode
+	 */
+	public boolean isIndeterminate() {
+		return mIndeterminate;
 	}
 
 	@Override
@@ -51,8 +115,12 @@ public class CircularLoadingDrawable extends Drawable {
 				bounds.centerY() - radius,
 				bounds.centerX() + radius,
 				bounds.centerY() + radius);
-		/* (90 + 540 * mProgress) % 360 */
-		canvas.drawArc(mArcBounds, 270, 360 * mProgress, false, mPaint);
+		if (mIndeterminate) {
+			canvas.drawArc(mArcBounds, mRotation, mSweep, false, mPaint);
+		} else {
+			/* (90 + 540 * mProgress) % 360 */
+			canvas.drawArc(mArcBounds, 270, 360 * mProgress, false, mPaint);
+		}
 	}
 
 	@Override
@@ -67,21 +135,179 @@ public class CircularLoadingDrawable extends Drawable {
 
 	@Override
 	public int getOpacity() {
-		return android.graphics.PixelFormat.OPAQUE;
+		return PixelFormat.TRANSLUCENT;
 	}
 
 	@Override
 	protected boolean onLevelChange(int level) {
 		if (level >= 0) {
 			mProgress = (float) level / MAXIMUM_LEVEL;
-			if (level == MAXIMUM_LEVEL) {
-				mPaint.setColor(mColorActive);
-			} else {
-				mPaint.setColor(mColor);
+			if (!mIndeterminate) {
+				if (level == MAXIMUM_LEVEL) {
+					mPaint.setColor(mColorActive);
+				} else {
+					mPaint.setColor(mColor);
+				}
+				invalidateSelf();
 			}
-			invalidateSelf();
 			return true;
 		}
 		return false;
 	}
+
+	@Override
+	public boolean setVisible(boolean visible, boolean restart) {
+		boolean changed = super.setVisible(visible, restart);
+		if (mRunning) {
+			if (visible) {
+				if (restart) {
+					mStartTimeNanos = 0;
+				}
+				FrameClock.getInstance().add(this);
+			} else {
+				FrameClock.getInstance().remove(this);
+			}
+		}
+		return changed;
+	}
+
+	/**
+	 * Starts the animation of the indeterminate mode. It does nothing if the drawable is not
+	 * indeterminate.
+	 */
+	@Override
+	public void start() {
+		if (mIndeterminate && !mRunning) {
+			mRunning = true;
+			mStartTimeNanos = 0;
+			if (isVisible()) {
+				FrameClock.getInstance().add(this);
+			}
+		}
+	}
+
+	/**
+	 * Stops the animation of the indeterminate mode.
+	 */
+	@Override
+	public void stop() {
+		if (mRunning) {
+			mRunning = false;
+			FrameClock.getInstance().remove(this);
+		}
+	}
+
+	@Override
+	public boolean isRunning() {
+		return mRunning;
+	}
+
+	/**
+	 * Updates the rotation and the sweep of the arc for the new frame.
+	 *
+	 * @param frameTimeNanos Time of the frame in nanoseconds
+	 */
+	private void onFrame(long frameTimeNanos) {
+		if (mStartTimeNanos == 0) {
+			mStartTimeNanos = frameTimeNanos;
+		}
+		long elapsed = (frameTimeNanos - mStartTimeNanos) % (ROTATION_DURATION_NANOS * 2);
+		float fraction = (float) elapsed / ROTATION_DURATION_NANOS;
+		mRotation = (fraction * 360 * 2) % 360;
+		// the sweep grows in the first rotation and shrinks in the second one
+		float sweepFraction = fraction < 1 ? fraction : 2 - fraction;
+		mSweep = MIN_SWEEP + (MAX_SWEEP - MIN_SWEEP) * sweepFraction;
+		invalidateSelf();
+	}
+
+	/**
+	 * Clock which animates all the running drawables with one callback per frame. It uses the
+	 * Choreographer when it is available.
+	 */
+	private static class FrameClock implements Runnable {
+
+		private static final long FRAME_DELAY = 16;
+
+		private static FrameClock sInstance;
+
+		private final ArrayList<CircularLoadingDrawable> mDrawables;
+		private final Handler mHandler;
+		private ChoreographerFrameCallback mFrameCallback;
+		private boolean mScheduled;
+
+		private FrameClock() {
+			mDrawables = new ArrayList<>();
+			mHandler = new Handler(Looper.getMainLooper());
+			if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+				mFrameCallback = new ChoreographerFrameCallback(this);
+			}
+		}
+
+		static FrameClock getInstance() {
+			if (sInstance == null) {
+				sInstance = new FrameClock();
+			}
+			return sInstance;
+		}
+
+		void add(CircularLoadingDrawable drawable) {
+			if (!mDrawables.contains(drawable)) {
+				mDrawables.add(drawable);
+				schedule();
+			}
+		}
+
+		void remove(CircularLoadingDrawable drawable) {
+			mDrawables.remove(drawable);
+		}
+
+		private void schedule() {
+			if (!mScheduled && !mDrawables.isEmpty()) {
+				mScheduled = true;
+				if (mFrameCallback != null) {
+					mFrameCallback.post();
+				} else {
+					mHandler.postDelayed(this, FRAME_DELAY);
+				}
+			}
+		}
+
+		@Override
+		public void run() {
+			doFrame(SystemClock.uptimeMillis() * 1000000L);
+		}
+
+		void doFrame(long frameTimeNanos) {
+			mScheduled = false;
+			for (int i = mDrawables.size() - 1; i >= 0; i--) {
+				CircularLoadingDrawable drawable = mDrawables.get(i);
+				if (drawable.getCallback() == null) {
+					// the drawable is not attached to any view
+					mDrawables.remove(i);
+				} else {
+					drawable.onFrame(frameTimeNanos);
+				}
+			}
+			schedule();
+		}
+	}
+
+	@TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+	private static class ChoreographerFrameCallback implements Choreographer.FrameCallback {
+
+		private final FrameClock mFrameClock;
+
+		ChoreographerFrameCallback(FrameClock frameClock) {
+			mFrameClock = frameClock;
+		}
+
+		void post() {
+			Choreographer.getInstance().postFrameCallback(this);
+		}
+
+		@Override
+		public void doFrame(long frameTimeNanos) {
+			mFrameClock.doFrame(frameTimeNanos);
+		}
+	}
 }
@@ -0,0 +1,438 @@
+package com.livae.android.loading;
+
+import android.support.annotation.NonNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.AbstractList;
+import java.util.List;
+
+/**
+ * Store of the pages of a feed in the disk. The pages are appended to a binary data file and their
+ * offsets are kept in an index file which is memory mapped. The pages are read from the mapped data
+ * file and each item is only decoded when it is accessed, so the first items can be displayed
+ * without reading the whole page.
+ * <p/>
+ * A page written again is appended to the data file and the old copy is discarded. When the data
+ * file is bigger than the maximum size it is compacted and the pages written longest ago are
+ * removed. The data file and the index keep the generation of the data file, which changes each
+ * time it is compacted, so an index which was not updated after a compaction is discarded. The
+ * entries of the index are cleared before they are written, so an entry is never made of old and
+ * new values. All the methods do disk operations and they should not be called in the main thread,
+ * except #readPage(int) for the first pages.
+ *
+ * @param <E> Type of the items of the pages
+ * @see CachedLoadListener#setPageStore(DiskPageStore)
+ */
+public class DiskPageStore<E> {
+
+	/**
+	 * Maximum number of pages of the store.
+	 */
+	public static final int MAX_PAGES = 256;
+
+	private static final int MAGIC = 0x4c485053;
+	private static final int VERSION = 2;
+	private static final int HEADER_SIZE = 16;
+	private static final int ENTRY_SIZE = 24;
+	private static final int INDEX_SIZE = HEADER_SIZE + MAX_PAGES * ENTRY_SIZE;
+	private static final int HEADER_PAGE_COUNT = 8;
+	private static final int HEADER_GENERATION = 12;
+	private static final int DATA_HEADER_SIZE = 8;
+	private static final int ENTRY_OFFSET = 0;
+	private static final int ENTRY_LENGTH = 8;
+	private static final int ENTRY_ITEM_COUNT = 12;
+	private static final int ENTRY_SEQUENCE = 16;
+
+	private final File mDataFile;
+	private final File mIndexFile;
+	private final long mMaxBytes;
+	private final Serializer<E> mSerializer;
+
+	private RandomAccessFile mData;
+	private RandomAccessFile mIndexRandomAccessFile;
+	private MappedByteBuffer mIndex;
+	private long mSequence;
+
+	/**
+	 * @param directory  Directory of the files of the store
+	 * @param name       Name of the store, used for the names of the files
+	 * @param maxBytes   Maximum size of the data file
+	 * @param serializer Serializer of the items
+	 * @throws IOException if the files cannot be opened
+	 */
+	public DiskPageStore(@NonNull File directory, @NonNull String name, long maxBytes,
+						 @NonNull Serializer<E> serializer) throws IOException {
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Cannot create the directory " + directory);
+		}
+		mDataFile = new File(directory, name + ".pages");
+		mIndexFile = new File(directory, name + ".index");
+		mMaxBytes = maxBytes;
+		mSerializer = serializer;
+		open();
+	}
+
+	private void open() throws IOException {
+		mData = new RandomAccessFile(mDataFile, "rw");
+		mIndexRandomAccessFile = new RandomAccessFile(mIndexFile, "rw");
+		boolean valid = mIndexRandomAccessFile.length() == INDEX_SIZE;
+		mIndex = mIndexRandomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0,
+				INDEX_SIZE);
+		valid = valid && mIndex.getInt(0) == MAGIC && mIndex.getInt(4) == VERSION;
+		long dataLength = mData.length();
+		if (valid && dataLength >= DATA_HEADER_SIZE) {
+			mData.seek(0);
+			// the index is not valid if the process died while the data file was compacted
+			valid = mData.readInt() == MAGIC
+					&& mData.readInt() == mIndex.getInt(HEADER_GENERATION);
+		} else {
+			valid = false;
+		}
+		if (!valid) {
+			resetIndex();
+			resetData();
+			return;
+		}
+		// discard the pages whose data was not completely written
+		for (int page = 0; page < MAX_PAGES; page++) {
+			int entry = entryPosition(page);
+			int length = mIndex.getInt(entry + ENTRY_LENGTH);
+			if (length > 0) {
+				long offset = mIndex.getLong(entry + ENTRY_OFFSET);
+				if (offset < DATA_HEADER_SIZE || offset + length > dataLength) {
+					mIndex.putInt(entry + ENTRY_LENGTH, 0);
+				} else {
+					mSequence = Math.max(mSequence, mIndex.getLong(entry + ENTRY_SEQUENCE));
+				}
+			}
+		}
+	}
+
+	private void resetIndex() {
+		int generation = mIndex.getInt(HEADER_GENERATION);
+		for (int i = 0; i < INDEX_SIZE; i += 4) {
+			mIndex.putInt(i, 0);
+		}
+		mIndex.putInt(0, MAGIC);
+		mIndex.putInt(4, VERSION);
+		mIndex.putInt(HEADER_GENERATION, generation);
+		mSequence = 0;
+	}
+
+	/**
+	 * Empties the data file with a new generation. The index must not have pages.
+	 */
+	private void resetData() throws IOException {
+		int generation = mIndex.getInt(HEADER_GENERATION) + 1;
+		mData.setLength(0);
+		writeDataHeader(mData, generation);
+		mIndex.putInt(HEADER_GENERATION, generation);
+	}
+
+	private static void writeDataHeader(RandomAccessFile data, int generation)
+			throws IOException {
+		data.seek(0);
+		data.writeInt(MAGIC);
+		data.writeInt(generation);
+	}
+
+	private static int entryPosition(int page) {
+		return HEADER_SIZE + page * ENTRY_SIZE;
+	}
+
+	/**
+	 * @return The number of pages, including the pages which were removed before the last one
+	 */
+	public synchronized int getPageCount() {
+		return mIndex.getInt(HEADER_PAGE_COUNT);
+	}
+
+	/**
+	 * @param page Index of the page
+	 * @return true if the page is in the store
+	 */
+	public synchronized boolean hasPage(int page) {
+		return page >= 0 && page < MAX_PAGES
+			   && mIndex.getInt(entryPosition(page) + ENTRY_LENGTH) > 0;
+	}
+
+	/**
+	 * @return The size of the data file in bytes
+	 * @throws IOException if the file cannot be read
+	 */
+	public synchronized long getSize() throws IOException {
+		return mData.length();
+	}
+
+	/**
+	 * Writes a page. The previous copy of the page is discarded.
+	 *
+	 * @param page  Index of the page, lower than #MAX_PAGES
+	 * @param items Items of the page
+	 * @return false if the page is out of the limits of the store
+	 * @throws IOException if the page cannot be written
+	 */
+	public synchronized boolean writePage(int page, List<E> items) throws IOException {
+		if (page < 0 || page >= MAX_PAGES) {
+			return false;
+		}
+		int itemCount = items.size();
+		byte[][] encoded = new byte[itemCount][];
+		int headerLength = 4 + (itemCount + 1) * 4;
+		int length = headerLength;
+		for (int i = 0; i < itemCount; i++) {
+			encoded[i] = mSerializer.encode(items.get(i));
+			length += encoded[i].length;
+		}
+		ByteBuffer record = ByteBuffer.allocate(length);
+		record.putInt(itemCount);
+		int itemOffset = headerLength;
+		for (int i = 0; i < itemCount; i++) {
+			record.putInt(itemOffset);
+			itemOffset += encoded[i].length;
+		}
+		record.putInt(itemOffset);
+		for (int i = 0; i < itemCount; i++) {
+			record.put(encoded[i]);
+		}
+		record.flip();
+		// the data is written before the index, so the index never points to incomplete data
+		FileChannel channel = mData.getChannel();
+		long offset = channel.size();
+		while (record.hasRemaining()) {
+			channel.write(record, offset + record.position());
+		}
+		// the entry is cleared first and the length is written last, so if the process dies while
+		// it is written the page is missing instead of pointing to the wrong data
+		int entry = entryPosition(page);
+		mIndex.putInt(entry + ENTRY_LENGTH, 0);
+		mIndex.putLong(entry + ENTRY_OFFSET, offset);
+		mIndex.putInt(entry + ENTRY_ITEM_COUNT, itemCount);
+		mIndex.putLong(entry + ENTRY_SEQUENCE, ++mSequence);
+		mIndex.putInt(entry + ENTRY_LENGTH, length);
+		if (page >= getPageCount()) {
+			mIndex.putInt(HEADER_PAGE_COUNT, page + 1);
+		}
+		if (offset + length > mMaxBytes) {
+			compact();
+		}
+		return true;
+	}
+
+	/**
+	 * Reads a page. The items are decoded from the mapped file when they are accessed.
+	 *
+	 * @param page Index of the page
+	 * @return The items of the page or null if the page is not in the store. The list cannot be
+	 * modified and the serializer can throw runtime exceptions when the items are decoded.
+	 * @throws IOException if the page cannot be read or it is corrupted, in which case it is
+	 *                     removed
+	 */
+	public synchronized List<E> readPage(int page) throws IOException {
+		if (!hasPage(page)) {
+			return null;
+		}
+		int entry = entryPosition(page);
+		long offset = mIndex.getLong(entry + ENTRY_OFFSET);
+		int length = mIndex.getInt(entry + ENTRY_LENGTH);
+		int itemCount = mIndex.getInt(entry + ENTRY_ITEM_COUNT);
+		if (offset < DATA_HEADER_SIZE || offset + length > mData.length() || itemCount < 0
+			|| 4 + (itemCount + 1) * 4L > length) {
+			throw discardCorruptedPage(page);
+		}
+		MappedByteBuffer buffer = mData.getChannel().map(FileChannel.MapMode.READ_ONLY, offset,
+				length);
+		if (buffer.getInt(0) != itemCount) {
+			throw discardCorruptedPage(page);
+		}
+		// the offsets of the items must be sorted and inside the record
+		int previous = 4 + (itemCount + 1) * 4;
+		for (int i = 0; i <= itemCount; i++) {
+			int itemOffset = buffer.getInt(4 + i * 4);
+			if (itemOffset < previous || itemOffset > length) {
+				throw discardCorruptedPage(page);
+			}
+			previous = itemOffset;
+		}
+		return new MappedPage<>(buffer, mSerializer);
+	}
+
+	private IOException discardCorruptedPage(int page) {
+		mIndex.putInt(entryPosition(page) + ENTRY_LENGTH, 0);
+		return new IOException("Corrupted page " + page);
+	}
+
+	/**
+	 * Removes the pages from the index. It is used when the fresh data of the first pages does not
+	 * match the stored data, so the next pages are not valid anymore.
+	 *
+	 * @param pageCount Number of pages to keep
+	 */
+	public synchronized void truncate(int pageCount) {
+		if (pageCount < 0) {
+			pageCount = 0;
+		}
+		for (int page = pageCount; page < getPageCount(); page++) {
+			mIndex.putInt(entryPosition(page) + ENTRY_LENGTH, 0);
+		}
+		if (pageCount < getPageCount()) {
+			mIndex.putInt(HEADER_PAGE_COUNT, pageCount);
+		}
+	}
+
+	/**
+	 * Removes all the pages.
+	 *
+	 * @throws IOException if the data file cannot be truncated
+	 */
+	public synchronized void clear() throws IOException {
+		resetIndex();
+		resetData();
+	}
+
+	/**
+	 * Closes the files of the store. It cannot be used after it is closed.
+	 *
+	 * @throws IOException if the files cannot be closed
+	 */
+	public synchronized void close() throws IOException {
+		mIndex.force();
+		mData.close();
+		mIndexRandomAccessFile.close();
+	}
+
+	/**
+	 * Rewrites the data file without the discarded copies of the pages. The pages written longest
+	 * ago are removed until the data uses less than three quarters of the maximum size.
+	 */
+	private void compact() throws IOException {
+		long targetBytes = mMaxBytes / 4 * 3;
+		long liveBytes = 0;
+		for (int page = 0; page < MAX_PAGES; page++) {
+			liveBytes += mIndex.getInt(entryPosition(page) + ENTRY_LENGTH);
+		}
+		while (liveBytes > targetBytes) {
+			int oldest = -1;
+			long oldestSequence = Long.MAX_VALUE;
+			for (int page = 0; page < MAX_PAGES; page++) {
+				int entry = entryPosition(page);
+				if (mIndex.getInt(entry + ENTRY_LENGTH) > 0
+					&& mIndex.getLong(entry + ENTRY_SEQUENCE) < oldestSequence) {
+					oldestSequence = mIndex.getLong(entry + ENTRY_SEQUENCE);
+					oldest = page;
+				}
+			}
+			if (oldest < 0) {
+				break;
+			}
+			liveBytes -= mIndex.getInt(entryPosition(oldest) + ENTRY_LENGTH);
+			mIndex.putInt(entryPosition(oldest) + ENTRY_LENGTH, 0);
+		}
+		File compactFile = new File(mDataFile.getPath() + ".tmp");
+		RandomAccessFile compactData = new RandomAccessFile(compactFile, "rw");
+		long[] offsets = new long[MAX_PAGES];
+		int generation = mIndex.getInt(HEADER_GENERATION) + 1;
+		try {
+			compactData.setLength(0);
+			writeDataHeader(compactData, generation);
+			FileChannel source = mData.getChannel();
+			FileChannel target = compactData.getChannel();
+			long position = DATA_HEADER_SIZE;
+			for (int page = 0; page < MAX_PAGES; page++) {
+				int entry = entryPosition(page);
+				int length = mIndex.getInt(entry + ENTRY_LENGTH);
+				if (length > 0) {
+					long offset = mIndex.getLong(entry + ENTRY_OFFSET);
+					long transferred = 0;
+					while (transferred < length) {
+						transferred += source.transferTo(offset + transferred,
+								length - transferred, target);
+					}
+					offsets[page] = position;
+					position += length;
+				}
+			}
+			target.force(false);
+		} finally {
+			compactData.close();
+		}
+		mData.close();
+		if (!compactFile.renameTo(mDataFile)) {
+			// the original data file is kept, the offsets of the index are still valid
+			mData = new RandomAccessFile(mDataFile, "rw");
+			compactFile.delete();
+			throw new IOException("Cannot replace the data file " + mDataFile);
+		}
+		mData = new RandomAccessFile(mDataFile, "rw");
+		for (int page = 0; page < MAX_PAGES; page++) {
+			int entry = entryPosition(page);
+			if (mIndex.getInt(entry + ENTRY_LENGTH) > 0) {
+				mIndex.putLong(entry + ENTRY_OFFSET, offsets[page]);
+			}
+		}
+		// the index matches the new data file only when all the offsets are updated
+		mIndex.putInt(HEADER_GENERATION, generation);
+		mIndex.force();
+	}
+
+	/**
+	 * Page read from the mapped data file. The items are decoded each time they are accessed.
+	 */
+	private static class MappedPage<E> extends AbstractList<E> {
+
+		private final ByteBuffer mBuffer;
+		private final Serializer<E> mSerializer;
+		private final int mSize;
+
+		MappedPage(ByteBuffer buffer, Serializer<E> serializer) {
+			mBuffer = buffer;
+			mSerializer = serializer;
+			mSize = buffer.getInt(0);
+		}
+
+		@Override
+		public E get(int location) {
+			if (location < 0 || location >= mSize) {
+				throw new IndexOutOfBoundsException("Invalid index " + location + ", size is " +
+													mSize);
+			}
+			int start = mBuffer.getInt(4 + location * 4);
+			int end = mBuffer.getInt(4 + (location + 1) * 4);
+			ByteBuffer item = mBuffer.duplicate();
+			item.limit(end);
+			item.position(start);
+			return mSerializer.decode(item.slice());
+		}
+
+		@Override
+		public int size() {
+			return mSize;
+		}
+	}
+
+	/**
+	 * Converts the items to bytes and the bytes to items.
+	 *
+	 * @param <E> Type of the items
+	 */
+	public interface Serializer<E> {
+
+		/**
+		 * @param item The item
+		 * @return The bytes of the item
+		 * @throws IOException if the item cannot be encoded
+		 */
+		public byte[] encode(E item) throws IOException;
+
+		/**
+		 * @param buffer Buffer with the bytes of the item, from its position to its limit
+		 * @return The item
+		 */
+		public E decode(ByteBuffer buffer);
+	}
+}
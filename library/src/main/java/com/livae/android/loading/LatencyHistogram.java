@@ -0,0 +1,131 @@
+package com.livae.android.loading;
+
+/**
+ * Histogram of durations with power of two buckets. The unit of the values is decided by the
+ * user of the histogram. Recording a value does not allocate memory.
+ */
+public class LatencyHistogram {
+
+	/**
+	 * Number of buckets of the histogram. The bucket 0 keeps the values lower than 1, the bucket i
+	 * keeps the values in the range [2^(i-1), 2^i) and the last bucket keeps the rest of values.
+	 */
+	public static final int BUCKETS = 32;
+
+	private final long[] mBuckets;
+	private long mCount;
+	private long mTotal;
+	private long mMax;
+
+	public LatencyHistogram() {
+		mBuckets = new long[BUCKETS];
+	}
+
+	/**
+	 * Creates a copy of other histogram.
+	 *
+	 * @param histogram The histogram to copy
+	 */
+	public LatencyHistogram(LatencyHistogram histogram) {
+		mBuckets = histogram.mBuckets.clone();
+		mCount = histogram.mCount;
+		mTotal = histogram.mTotal;
+		mMax = histogram.mMax;
+	}
+
+	/**
+	 * Adds a new value to the histogram.
+	 *
+	 * @param value The value, negative values are recorded as 0
+	 */
+	public void record(long value) {
+		if (value < 0) {
+			value = 0;
+		}
+		int bucket = 64 - Long.numberOfLeadingZeros(value);
+		if (bucket >= BUCKETS) {
+			bucket = BUCKETS - 1;
+		}
+		mBuckets[bucket]++;
+		mCount++;
+		mTotal += value;
+		if (value > mMax) {
+			mMax = value;
+		}
+	}
+
+	/**
+	 * Removes all the values of the histogram.
+	 */
+	public void clear() {
+		for (int i = 0; i < BUCKETS; i++) {
+			mBuckets[i] = 0;
+		}
+		mCount = 0;
+		mTotal = 0;
+		mMax = 0;
+	}
+
+	/**
+	 * @return The number of values recorded
+	 */
+	public long getCount() {
+		return mCount;
+	}
+
+	/**
+	 * @return The sum of all the values recorded
+	 */
+	public long getTotal() {
+		return mTotal;
+	}
+
+	/**
+	 * @return The maximum value recorded
+	 */
+	public long getMax() {
+		return mMax;
+	}
+
+	/**
+	 * @return The mean of the values recorded or 0 if there are no values
+	 */
+	public long getMean() {
+		return mCount == 0 ? 0 : mTotal / mCount;
+	}
+
+	/**
+	 * @param bucket Index of the bucket
+	 * @return Number of values in the bucket
+	 * @see #BUCKETS
+	 */
+	public long getBucketCount(int bucket) {
+		return mBuckets[bucket];
+	}
+
+	/**
+	 * Returns an estimation of the percentile. The value is the upper limit of the bucket where the
+	 * percentile is, so it is never lower than the real value but at most twice the real value.
+	 *
+	 * @param percentile The percentile, between 0 and 100
+	 * @return The estimated value of the percentile or 0 if there are no values
+	 */
+	public long getPercentile(float percentile) {
+		if (mCount == 0) {
+			return 0;
+		}
+		long target = (long) Math.ceil(mCount * percentile / 100);
+		if (target < 1) {
+			target = 1;
+		}
+		long accumulated = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			accumulated += mBuckets[i];
+			if (accumulated >= target) {
+				long upper = i == 0 ? 0 : (1L << i) - 1;
+				return Math.min(upper, mMax);
+			}
+		}
+		return mMax;
+	}
+}
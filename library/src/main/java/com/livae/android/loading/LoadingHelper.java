@@ -5,18 +5,26 @@ import android.animation.AnimatorListenerAdapter;
 import android.animation.ValueAnimator;
 import android.app.Activity;
 import android.content.res.Resources;
+import android.graphics.Canvas;
 import android.graphics.Color;
+import android.os.Bundle;
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
 import android.support.v4.view.MotionEventCompat;
+import android.support.v4.view.ViewCompat;
 import android.support.v7.widget.GridLayoutManager;
 import android.support.v7.widget.LinearLayoutManager;
 import android.support.v7.widget.RecyclerView;
+import android.support.v7.widget.StaggeredGridLayoutManager;
 import android.view.MotionEvent;
 import android.view.View;
+import android.view.ViewConfiguration;
 import android.view.ViewGroup;
+import android.view.ViewParent;
 import android.view.animation.DecelerateInterpolator;
 import android.widget.ProgressBar;
 
+import java.util.Arrays;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
@@ -31,6 +39,26 @@ public class LoadingHelper<k extends RecyclerView.ViewHolder> implements View.On
 	 */
 	protected static final int PROGRESS_BAR_MAX = 1000;
 	private static final int INVALID_POINTER = -1;
+	private static final int ANIMATION_OFFSET = 0;
+	private static final int ANIMATION_ALPHA = 1;
+	private static final int ANIMATION_HEIGHT = 2;
+	private static final float ADAPTIVE_PRELOAD_SMOOTHING = 0.3f;
+	private static final float ADAPTIVE_PRELOAD_MARGIN = 1.5f;
+	private static final String STATE_PREFIX = LoadingHelper.class.getName() + ".";
+	private static final String STATE_ENDLESS_LOADING = STATE_PREFIX + "endlessLoading";
+	private static final String STATE_ENDLESS_LOADING_PREVIOUS =
+			STATE_PREFIX + "endlessLoadingPrevious";
+	private static final String STATE_KEEP_LOADING_PREVIOUS = STATE_PREFIX + "keepLoadingPrevious";
+	private static final String STATE_PULL_TO_REFRESH = STATE_PREFIX + "pullToRefresh";
+	private static final String STATE_ANCHOR_POSITION = STATE_PREFIX + "anchorPosition";
+	private static final String STATE_ANCHOR_OFFSET = STATE_PREFIX + "anchorOffset";
+	private static final String STATE_LOAD_STATE = STATE_PREFIX + "loadState";
+	private static final Clock SYSTEM_CLOCK = new Clock() {
+		@Override
+		public long uptimeMillis() {
+			return SystemClock.uptimeMillis();
+		}
+	};
 
 	private final AtomicBoolean mIsLoadingNext;
 	private final AtomicBoolean mIsLoadingPrevious;
@@ -41,12 +69,29 @@ public class LoadingHelper<k extends RecyclerView.ViewHolder> implements View.On
 	private final View mInitialLoadingView;
 	private final DecelerateInterpolator mDecelerateInterpolator;
 
-	private LinearLayoutManager mLayoutManager;
+	private RecyclerView.LayoutManager mLayoutManager;
+	private int[] mStaggeredPositions;
+	private int mScrollAnchorPosition;
+	private int mScrollAnchorOffset;
+	private Bundle mRestoredState;
+	private boolean mRestoringScrollAnchor;
 	private boolean mEnableInitialProgressLoading;
 	private boolean mEnabledPullToRefreshUpdate;
 	private boolean mEnableEndlessLoading;
+	private boolean mEnableEndlessLoadingPrevious;
+	private boolean mKeepLoadingPrevious;
+	private int mEndlessLoadingPreviousPreloadAhead;
 	private boolean mRetryLoadingPrevious;
 	private int mEndlessLoadingPreloadAhead;
+	private boolean mAdaptivePreload;
+	private int mAdaptivePreloadMin;
+	private int mAdaptivePreloadMax;
+	private long mLoadNextStartTime;
+	private Clock mClock = SYSTEM_CLOCK;
+	private float mLoadNextLatency;
+	private float mScrollVelocity;
+	private int mLastCheckPosition;
+	private long mLastCheckTime;
 	private View mTopLoadingView;
 	private ProgressBar mTopLoadingProgressBar;
 	private float mPullToRefreshInitialY;
@@ -54,14 +99,39 @@ public class LoadingHelper<k extends RecyclerView.ViewHolder> implements View.On
 	private int mPullToRefreshAnimationDuration;
 	private int mLoadingViewOriginalHeight;
 	private ValueAnimator mPullToRefreshUpdateAnimation;
+	private int mPullToRefreshAnimationType;
+	private float mPullToRefreshAnimationFrom;
+	private float mPullToRefreshAnimationTo;
+	private boolean mPullToRefreshTranslation;
+	private PullToRefreshDecoration mPullToRefreshDecoration;
+	private float mPullToRefreshOffset;
 	private int mActivePointerId;
-	private View.OnTouchListener mTouchListener;
+	private float mTouchDownY;
+	private float mPullToRefreshDiff;
+	private int mTouchSlop;
+	private PullToRefreshTouchListener mPullToRefreshTouchListener;
+	private boolean mAtTop;
 	private GridSpanSize mGridSpanSize;
 	private RecyclerView.OnScrollListener mOnScrollListener;
+	private final Runnable mCheckLoadNextRunnable;
+	private final Runnable mClearRetryLoadingPreviousRunnable;
+	private final Runnable mCheckBatchUpdateRunnable;
+	private boolean mCheckLoadNextScheduled;
+	private boolean mCheckLoadNextAfterLayout;
 	private int mColorCircularLoading;
 	private int mColorCircularLoadingActive;
 	private boolean mLoadingInitial;
 	private boolean mErrorLoadingInitial;
+	private volatile int mLoadGeneration;
+	private PageEvictionListener mPageEvictionListener;
+	private PageLoadListener mPageLoadListener;
+	private int mWindowMaxPages;
+	private int[] mPageSizes;
+	private int mPageCount;
+	private int mEvictedTopPages;
+	private int mItemsBeforeInitial;
+	private boolean mReloadingEvictedPage;
+	private LoadingMetrics mLoadingMetrics;
 
 	/**
 	 * Default constructor
@@ -99,6 +169,27 @@ public class LoadingHelper<k extends RecyclerView.ViewHolder> implements View.On
 		mPullToRefreshInitialY = -1;
 		mIsLoadingNext = new AtomicBoolean(false);
 		mIsLoadingPrevious = new AtomicBoolean(false);
+		mCheckLoadNextRunnable = new Runnable() {
+			@Override
+			public void run() {
+				doCheckLoadNext();
+			}
+		};
+		mClearRetryLoadingPreviousRunnable = new Runnable() {
+			@Override
+			public void run() {
+				mRetryLoadingPrevious = false;
+			}
+		};
+		mCheckBatchUpdateRunnable = new Runnable() {
+			@Override
+			public void run() {
+				if (mAdapter.isBatchUpdating()) {
+					// the notifications of the open batch would never reach the recycler view
+					throw new RuntimeException("Batch update not finished with endBatchUpdate");
+				}
+			}
+		};
 
 		setLayoutManager(new LinearLayoutManager(activity));
 
@@ -128,6 +219,9 @@ public class LoadingHelper<k extends RecyclerView.ViewHolder> implements View.On
 		}
 		// specify the adapter
 		mAdapter = new RecyclerAdapter<>(this, adapter, errorViewsCreator, activity);
+		if (loadListener instanceof AsyncLoadListener) {
+			((AsyncLoadListener) loadListener).setLoadingHelper(this);
+		}
 		mRecyclerView.setAdapter(mAdapter);
 
 		mRecyclerView.setOnScrollListener(new RecyclerView.OnScrollListener() {
@@ -140,6 +234,7 @@ public class LoadingHelper<k extends RecyclerView.ViewHolder> implements View.On
 
 			@Override
 			public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+				updateAtTop();
 				if (!mLoadingInitial && !mErrorLoadingInitial) {
 					checkLoadNext();
 				}
@@ -148,7 +243,21 @@ public class LoadingHelper<k extends RecyclerView.ViewHolder> implements View.On
 				}
 			}
 		});
-		mRecyclerView.setOnTouchListener(this);
+		mRecyclerView.addOnLayoutChangeListener(new View.OnLayoutChangeListener() {
+			@Override
+			public void onLayoutChange(View v, int left, int top, int right, int bottom,
+									   int oldLeft, int oldTop, int oldRight, int oldBottom) {
+				if (mCheckLoadNextAfterLayout) {
+					mCheckLoadNextAfterLayout = false;
+					if (!mLoadingInitial && !mErrorLoadingInitial) {
+						checkLoadNext();
+					}
+				}
+			}
+		});
+		mPullToRefreshTouchListener = new PullToRefreshTouchListener();
+		mRecyclerView.addOnItemTouchListener(mPullToRefreshTouchListener);
+		mTouchSlop = ViewConfiguration.get(activity).getScaledTouchSlop();
 		Resources resources = activity.getResources();
 		mPullToRefreshDistance = resources.getDimensionPixelSize(
 				R.dimen.loading_helper_pull_refresh_distance);
@@ -159,20 +268,30 @@ public class LoadingHelper<k extends RecyclerView.ViewHolder> implements View.On
 	/**
 	 * Sets the layout manager of the recycler view. If the layout manager is a GridLayoutManager
 	 * the span size lookup is changed in order to make the pull to refresh use the whole width of
-	 * the view.
+	 * the view. With a StaggeredGridLayoutManager the header, loading, error and footer views use
+	 * all the spans.
 	 *
-	 * @param layoutManager The new layout manager.
+	 * @param layoutManager The new layout manager, a LinearLayoutManager or a
+	 *                      StaggeredGridLayoutManager.
 	 * @see android.support.v7.widget.LinearLayoutManager
 	 * @see android.support.v7.widget.GridLayoutManager
+	 * @see android.support.v7.widget.StaggeredGridLayoutManager
 	 * @see android.support.v7.widget.GridLayoutManager#setSpanSizeLookup(android.support.v7.widget.GridLayoutManager.SpanSizeLookup)
 	 */
-	public void setLayoutManager(@NonNull LinearLayoutManager layoutManager) {
+	public void setLayoutManager(@NonNull RecyclerView.LayoutManager layoutManager) {
+		if (!(layoutManager instanceof LinearLayoutManager)
+			&& !(layoutManager instanceof StaggeredGridLayoutManager)) {
+			throw new RuntimeException("Only LinearLayoutManager and StaggeredGridLayoutManager are " +
+									   "supported");
+		}
 		mLayoutManager = layoutManager;
 		mRecyclerView.setLayoutManager(mLayoutManager);
 		if (layoutManager instanceof GridLayoutManager) {
 			GridLayoutManager gridLayoutManager = (GridLayoutManager) layoutManager;
 			if (mGridSpanSize == null) {
 				mGridSpanSize = new GridSpanSize(gridLayoutManager);
+			} else {
+				mGridSpanSize.invalidateCache();
 			}
 			gridLayoutManager.setSpanSizeLookup(mGridSpanSize);
 		}
@@ -186,6 +305,29 @@ public class LoadingHelper<k extends RecyclerView.ViewHolder> implements View.On
 		mPullToRefreshInitialY = -1;
 	}
 
+	/**
+	 * This method should be called when the view of the fragment or the activity is destroyed. It
+	 * cancels the pending loads of an AsyncLoadListener and the pending checks for loading more
+	 * items.
+	 *
+	 * @see AsyncLoadListener#cancelLoads()
+	 */
+	public void onDestroy() {
+		cancelAsyncLoads();
+		mRecyclerView.removeCallbacks(mCheckLoadNextRunnable);
+		mCheckLoadNextScheduled = false;
+		mCheckLoadNextAfterLayout = false;
+		if (mPullToRefreshUpdateAnimation != null && mPullToRefreshUpdateAnimation.isRunning()) {
+			mPullToRefreshUpdateAnimation.cancel();
+		}
+	}
+
+	private void cancelAsyncLoads() {
+		if (mLoadListener instanceof AsyncLoadListener) {
+			((AsyncLoadListener) mLoadListener).cancelLoads();
+		}
+	}
+
 	/**
 	 * Whether the initial progress loading will be performed or not. Future calls after the initial
 	 * loading wont do anything unless you restart the fragment.
@@ -218,6 +360,39 @@ public class LoadingHelper<k extends RecyclerView.ViewHolder> implements View.On
 	}
 
 
+	/**
+	 * Whether the previous items are loaded automatically when the user scrolls near the first
+	 * item, the same way the endless loading loads the next items. The previous and the next items
+	 * are loaded independently, so both loads can be in progress at the same time. The positions
+	 * are the positions in the adapter, so with a reverse layout the previous items are loaded
+	 * when the user scrolls near the bottom of the screen.
+	 *
+	 * @param enable whether endless loading of the previous items is enabled or not
+	 * @see LoadListener#loadPrevious()
+	 * @see #endlessLoadingPreviousPreloadAhead(int)
+	 * @see #finishLoadingPrevious(boolean, int, boolean)
+	 */
+	public void enableEndlessLoadingPrevious(boolean enable) {
+		mEnableEndlessLoadingPrevious = enable;
+		if (enable && !mLoadingInitial && !mErrorLoadingInitial) {
+			checkLoadNext();
+		}
+	}
+
+	/**
+	 * Sets the number of elements before reaching the first item of the recycler view to call the
+	 * method to load the previous items.
+	 *
+	 * @param numberOfElements Number of elements
+	 * @see #enableEndlessLoadingPrevious(boolean)
+	 */
+	public void endlessLoadingPreviousPreloadAhead(int numberOfElements) {
+		if (numberOfElements < 0) {
+			numberOfElements = 0;
+		}
+		mEndlessLoadingPreviousPreloadAhead = numberOfElements;
+	}
+
 	/**
 	 * Sets the number of elements before reaching the end of the recycler view to call the loading
 	 * method.
@@ -230,6 +405,131 @@ public class LoadingHelper<k extends RecyclerView.ViewHolder> implements View.On
 			numberOfElements = 0;
 		}
 		mEndlessLoadingPreloadAhead = numberOfElements;
+		mAdaptivePreload = false;
+	}
+
+	/**
+	 * Makes the number of elements to preload before reaching the end of the recycler view
+	 * adaptive. It is estimated from the scroll speed and the time the load listener takes to
+	 * finish loading the next items, so the next items are requested just in time to be loaded
+	 * before the user reaches the end. Calling #endlessLoadingPreloadAhead(int) disables it.
+	 *
+	 * @param minElements Minimum number of elements to preload
+	 * @param maxElements Maximum number of elements to preload
+	 * @see #endlessLoadingPreloadAhead(int)
+	 * @see LoadListener#loadNext()
+	 */
+	public void endlessLoadingAdaptivePreload(int minElements, int maxElements) {
+		if (minElements < 0) {
+			minElements = 0;
+		}
+		if (maxElements < minElements) {
+			maxElements = minElements;
+		}
+		mAdaptivePreloadMin = minElements;
+		mAdaptivePreloadMax = maxElements;
+		mEndlessLoadingPreloadAhead = minElements;
+		mAdaptivePreload = true;
+	}
+
+	/**
+	 * Returns the generation of the loads. It changes each time the loading helper is reset, so a
+	 * load listener can get it when a load starts and use it to finish the load. The loads which
+	 * finish after a reset are ignored.
+	 *
+	 * @return The current generation of the loads
+	 * @see #finishLoadingPrevious(int, boolean, int)
+	 * @see #finishLoadingNext(int, boolean, int, boolean)
+	 * @see #finishLoadingInitial(int, boolean, int, boolean)
+	 * @see #finishLoadingPage(int, int, boolean)
+	 */
+	public int getLoadGeneration() {
+		return mLoadGeneration;
+	}
+
+	/**
+	 * @param loadGeneration The generation of a load
+	 * @return true if the load belongs to the current generation, false if the loading helper was
+	 * reset after the load started and its data must not be added to the adapter
+	 * @see #getLoadGeneration()
+	 */
+	public boolean isLoadGenerationCurrent(int loadGeneration) {
+		return loadGeneration == mLoadGeneration;
+	}
+
+	/**
+	 * Same as #finishLoadingPrevious(boolean, int) but it does nothing if the loading helper was
+	 * reset after the load started.
+	 *
+	 * @param loadGeneration   The generation when the load started
+	 * @param showTopErrorView whether to show or not the top error view
+	 * @param dataInserted     Number of elements inserted before the first element
+	 * @return true if the load was finished, false if it was ignored
+	 * @see #getLoadGeneration()
+	 */
+	public synchronized boolean finishLoadingPrevious(int loadGeneration, boolean showTopErrorView,
+													  int dataInserted) {
+		return finishLoadingPrevious(loadGeneration, showTopErrorView, dataInserted, true);
+	}
+
+	/**
+	 * Same as #finishLoadingPrevious(boolean, int, boolean) but it does nothing if the loading
+	 * helper was reset after the load started.
+	 *
+	 * @param loadGeneration   The generation when the load started
+	 * @param showTopErrorView whether to show or not the top error view
+	 * @param dataInserted     Number of elements inserted before the first element
+	 * @param keepLoading      whether to keep loading the previous elements automatically or not
+	 * @return true if the load was finished, false if it was ignored
+	 * @see #getLoadGeneration()
+	 */
+	public synchronized boolean finishLoadingPrevious(int loadGeneration, boolean showTopErrorView,
+													  int dataInserted, boolean keepLoading) {
+		if (loadGeneration != mLoadGeneration) {
+			return false;
+		}
+		finishLoadingPrevious(showTopErrorView, dataInserted, keepLoading);
+		return true;
+	}
+
+	/**
+	 * Same as #finishLoadingNext(boolean, int, boolean) but it does nothing if the loading helper
+	 * was reset after the load started.
+	 *
+	 * @param loadGeneration      The generation when the load started
+	 * @param showBottomErrorView whether to show or not the bottom error view
+	 * @param dataInserted        Number of elements inserted after the last element
+	 * @param keepLoading         whether to try to load the next elements or not
+	 * @return true if the load was finished, false if it was ignored
+	 * @see #getLoadGeneration()
+	 */
+	public synchronized boolean finishLoadingNext(int loadGeneration, boolean showBottomErrorView,
+												  int dataInserted, boolean keepLoading) {
+		if (loadGeneration != mLoadGeneration) {
+			return false;
+		}
+		finishLoadingNext(showBottomErrorView, dataInserted, keepLoading);
+		return true;
+	}
+
+	/**
+	 * Same as #finishLoadingInitial(boolean, int, boolean) but it does nothing if the loading
+	 * helper was reset after the load started.
+	 *
+	 * @param loadGeneration   The generation when the load started
+	 * @param showTopErrorView whether to show or not the top error view
+	 * @param dataInserted     Number of elements inserted
+	 * @param keepLoading      whether to try to load the next elements or not
+	 * @return true if the load was finished, false if it was ignored
+	 * @see #getLoadGeneration()
+	 */
+	public synchronized boolean finishLoadingInitial(int loadGeneration, boolean showTopErrorView,
+													 int dataInserted, boolean keepLoading) {
+		if (loadGeneration != mLoadGeneration) {
+			return false;
+		}
+		finishLoadingInitial(showTopErrorView, dataInserted, keepLoading);
+		return true;
 	}
 
 	/**
@@ -241,15 +541,61 @@ public class LoadingHelper<k extends RecyclerView.ViewHolder> implements View.On
 	 */
 	public synchronized void finishLoadingPrevious(boolean showTopErrorView,
 												   int dataInserted) {
+		finishLoadingPrevious(showTopErrorView, dataInserted, true);
+	}
+
+	/**
+	 * This method must be called after loading previous items.
+	 *
+	 * @param showTopErrorView whether to show or not the top error view
+	 * @param dataInserted     Number of elements inserted before the first element
+	 * @param keepLoading      whether to keep loading the previous elements automatically or not.
+	 *                         It is only used when the endless loading of the previous elements is
+	 *                         enabled.
+	 * @see com.livae.android.loading.LoadingHelper.LoadListener#loadPrevious()
+	 * @see #enableEndlessLoadingPrevious(boolean)
+	 */
+	public synchronized void finishLoadingPrevious(boolean showTopErrorView,
+												   int dataInserted, boolean keepLoading) {
 		if (mLoadingInitial) {
 			throw new RuntimeException("Cannot finish load previous while loading initial data");
 		}
 		if (mIsLoadingPrevious.getAndSet(false)) {
-			mAdapter.showTopLoading(false);
-			if (showTopErrorView) {
-				mAdapter.showTopError(true);
-			} else if (dataInserted > 0) {
-				mAdapter.notifyDataItemRangeInserted(0, dataInserted);
+			if (mLoadingMetrics != null) {
+				mLoadingMetrics.finishLoad(LoadingMetrics.LOAD_PREVIOUS, showTopErrorView,
+						dataInserted);
+			}
+			boolean anchored = !showTopErrorView && dataInserted > 0 && saveScrollAnchor();
+			int lastVisible = findLastVisibleItemPosition() - mAdapter.getHeaderCount();
+			mAdapter.beginBatchUpdate();
+			try {
+				mAdapter.showTopLoading(false);
+				if (showTopErrorView) {
+					mAdapter.showTopError(true);
+				} else if (dataInserted > 0) {
+					mAdapter.notifyDataItemRangeInserted(0, dataInserted);
+					mItemsBeforeInitial += dataInserted;
+					if (anchored) {
+						restoreScrollAnchor(dataInserted);
+					}
+					if (mReloadingEvictedPage && mEvictedTopPages > 0) {
+						mEvictedTopPages--;
+					}
+					if (mPageEvictionListener != null) {
+						addPage(true, dataInserted);
+						evictBottomPages(lastVisible + dataInserted);
+					}
+				}
+				if (!showTopErrorView) {
+					// after an error the retry loads the same page again
+					mReloadingEvictedPage = false;
+					mKeepLoadingPrevious = keepLoading;
+					if (keepLoading && mEnableEndlessLoadingPrevious) {
+						checkLoadNext();
+					}
+				}
+			} finally {
+				mAdapter.endBatchUpdate();
 			}
 		} else {
 			throw new RuntimeException("Cannot finish load previous while not loading previous");
@@ -270,17 +616,31 @@ public class LoadingHelper<k extends RecyclerView.ViewHolder> implements View.On
 			throw new RuntimeException("Cannot finish load next while loading initial data");
 		}
 		if (mIsLoadingNext.getAndSet(false)) {
-			mAdapter.showBottomLoading(false);
-			if (showBottomErrorView) {
-				mAdapter.showBottomError(true);
-			} else {
-				if (dataInserted > 0) {
-					int itemCount = mAdapter.getAdapterItemCount();
-					mAdapter.notifyDataItemRangeInserted(itemCount - dataInserted, dataInserted);
-				}
-				if (keepLoading) {
-					checkLoadNext();
+			updateLoadNextLatency();
+			if (mLoadingMetrics != null) {
+				mLoadingMetrics.finishLoad(LoadingMetrics.LOAD_NEXT, showBottomErrorView,
+						dataInserted);
+			}
+			mAdapter.beginBatchUpdate();
+			try {
+				mAdapter.showBottomLoading(false);
+				if (showBottomErrorView) {
+					mAdapter.showBottomError(true);
+				} else {
+					if (dataInserted > 0) {
+						int itemCount = mAdapter.getAdapterItemCount();
+						mAdapter.notifyDataItemRangeInserted(itemCount - dataInserted, dataInserted);
+						if (mPageEvictionListener != null) {
+							addPage(false, dataInserted);
+							evictTopPages();
+						}
+					}
+					if (keepLoading) {
+						checkLoadNext();
+					}
 				}
+			} finally {
+				mAdapter.endBatchUpdate();
 			}
 		} else {
 			throw new RuntimeException("Cannot finish load next while not loading next");
@@ -288,11 +648,15 @@ public class LoadingHelper<k extends RecyclerView.ViewHolder> implements View.On
 	}
 
 	/**
-	 * This method must be called after loading the initial items.
+	 * This method must be called after loading the initial items. In placeholder mode the rows
+	 * are already inserted by #setTotalCount(int) and dataInserted is the number of items loaded
+	 * from the first position: the pages completely loaded are displayed and the rest of the
+	 * visible pages are requested.
 	 *
 	 * @param showTopErrorView whether to show or not the top error view
 	 * @param dataInserted     Number of elements inserted
-	 * @param keepLoading      whether to try to load the next elements or not
+	 * @param keepLoading      whether to try to load the next elements or not, the pages are
+	 *                         always requested in placeholder mode
 	 * @see com.livae.android.loading.LoadingHelper.LoadListener#loadInitial()
 	 */
 	public synchronized void finishLoadingInitial(boolean showTopErrorView, int dataInserted,
@@ -309,26 +673,63 @@ public class LoadingHelper<k extends RecyclerView.ViewHolder> implements View.On
 				}
 			}).start();
 		}
-		mAdapter.showTopLoading(false);
-		if (mIsLoadingNext.getAndSet(false)) {
-			mErrorLoadingInitial = showTopErrorView;
-			if (showTopErrorView) {
-				mAdapter.showTopError(true);
-			} else {
-				mLoadingInitial = false;
-				if (dataInserted > 0) {
-					int itemCount = mAdapter.getAdapterItemCount();
-					mAdapter.notifyDataItemRangeInserted(itemCount - dataInserted, dataInserted);
+		mAdapter.beginBatchUpdate();
+		try {
+			mAdapter.showTopLoading(false);
+			if (mIsLoadingNext.getAndSet(false)) {
+				if (mLoadingMetrics != null) {
+					mLoadingMetrics.finishLoad(LoadingMetrics.LOAD_INITIAL, showTopErrorView,
+							dataInserted);
 				}
-				if (keepLoading) {
-					checkLoadNext();
+				mErrorLoadingInitial = showTopErrorView;
+				boolean restoreScrollAnchor = mRestoringScrollAnchor;
+				mRestoringScrollAnchor = false;
+				if (showTopErrorView) {
+					mAdapter.showTopError(true);
+				} else {
+					mLoadingInitial = false;
+					int itemCount = mAdapter.getAdapterItemCount();
+					if (mAdapter.isPlaceholderMode()) {
+						setInitialPagesLoaded(dataInserted);
+					} else if (dataInserted > 0) {
+						mAdapter.notifyDataItemRangeInserted(itemCount - dataInserted, dataInserted);
+						if (mPageEvictionListener != null) {
+							addPage(false, dataInserted);
+						}
+					}
+					if (dataInserted > 0 && restoreScrollAnchor
+						&& mScrollAnchorPosition < itemCount) {
+						restoreScrollAnchor(0);
+					}
+					if (keepLoading || mAdapter.isPlaceholderMode()) {
+						checkLoadNext();
+					}
 				}
+			} else {
+				throw new RuntimeException("It was not loading initial");
 			}
-		} else {
-			throw new RuntimeException("It was not loading initial");
+		} finally {
+			mAdapter.endBatchUpdate();
 		}
 	}
 
+	/**
+	 * This method must be called after loading the items of a restored state instead of
+	 * #finishLoadingInitial(boolean, int, boolean).
+	 *
+	 * @param showTopErrorView whether to show or not the top error view
+	 * @param dataInserted     Number of elements inserted
+	 * @param anchorPosition   Position of the item which was the first visible item when the state
+	 *                         was saved, in the inserted items
+	 * @param keepLoading      whether to try to load the next elements or not
+	 * @see StatefulLoadListener#loadRestored(Bundle, int)
+	 */
+	public synchronized void finishLoadingRestored(boolean showTopErrorView, int dataInserted,
+												   int anchorPosition, boolean keepLoading) {
+		mScrollAnchorPosition = anchorPosition;
+		finishLoadingInitial(showTopErrorView, dataInserted, keepLoading);
+	}
+
 	/**
 	 * When an error is displayed at the top this method tries again to load the previous items
 	 * again.
@@ -336,36 +737,22 @@ public class LoadingHelper<k extends RecyclerView.ViewHolder> implements View.On
 	public synchronized void retryLoadPrevious() {
 		if (mLoadingInitial || mErrorLoadingInitial) {
 			if (mAdapter.isShowTopError()) {
+				if (mLoadingMetrics != null) {
+					mLoadingMetrics.retryLoad(LoadingMetrics.LOAD_INITIAL);
+				}
 				reset();
 			} else {
 				throw new RuntimeException("Retry loading previous without top error");
 			}
 		} else {
-			if (mAdapter.isShowTopError() && mEnabledPullToRefreshUpdate && !mIsLoadingPrevious.get()) {
-				if (mAdapter.isShowTopError()) {
-					mAdapter.showTopError(false);
-				}
-				if (mTopLoadingView != null) {
-					ViewGroup.LayoutParams layoutParams = mTopLoadingView.getLayoutParams();
-					layoutParams.height = mLoadingViewOriginalHeight;
-					mTopLoadingView.setLayoutParams(layoutParams);
-					mTopLoadingProgressBar.setIndeterminate(true);
-					mTopLoadingView.setAlpha(1);
-					mTopLoadingProgressBar.setScaleX(1);
-					mTopLoadingProgressBar.setScaleY(1);
-				}
-				if (!mAdapter.isShowTopLoading()) {
-					mRetryLoadingPrevious = true;
-					mAdapter.showTopLoading(true);
-				}
-				mRecyclerView.post(new Runnable() {
-					@Override
-					public void run() {
-						mRetryLoadingPrevious = false;
-					}
-				});
+			if (mAdapter.isShowTopError() && !mIsLoadingPrevious.get()
+				&& (mEnabledPullToRefreshUpdate || mEnableEndlessLoadingPrevious)) {
+				showTopLoadingView();
 				mIsLoadingPrevious.set(true);
-				mLoadListener.loadPrevious();
+				if (mLoadingMetrics != null) {
+					mLoadingMetrics.retryLoad(LoadingMetrics.LOAD_PREVIOUS);
+				}
+				dispatchLoadPrevious();
 			} else {
 				throw new RuntimeException("Retry loading previous without top error or pull to refresh");
 			}
@@ -373,6 +760,34 @@ public class LoadingHelper<k extends RecyclerView.ViewHolder> implements View.On
 	}
 
 
+	/**
+	 * Displays the top loading view with the indeterminate progress.
+	 */
+	private void showTopLoadingView() {
+		mAdapter.beginBatchUpdate();
+		try {
+			if (mAdapter.isShowTopError()) {
+				mAdapter.showTopError(false);
+			}
+			if (mTopLoadingView != null) {
+				ViewGroup.LayoutParams layoutParams = mTopLoadingView.getLayoutParams();
+				layoutParams.height = mLoadingViewOriginalHeight;
+				mTopLoadingView.setLayoutParams(layoutParams);
+				mTopLoadingProgressBar.setIndeterminate(true);
+				mTopLoadingView.setAlpha(1);
+				mTopLoadingProgressBar.setScaleX(1);
+				mTopLoadingProgressBar.setScaleY(1);
+			}
+			if (!mAdapter.isShowTopLoading()) {
+				mRetryLoadingPrevious = true;
+				mAdapter.showTopLoading(true);
+			}
+		} finally {
+			mAdapter.endBatchUpdate();
+		}
+		mRecyclerView.post(mClearRetryLoadingPreviousRunnable);
+	}
+
 	/**
 	 * When an error is displayed at the bottom this method tries again to load the next items
 	 * again.
@@ -382,184 +797,1031 @@ public class LoadingHelper<k extends RecyclerView.ViewHolder> implements View.On
 			throw new RuntimeException("Cannot load next while loading initial data");
 		}
 		if (mAdapter.isShowBottomError() && mEnableEndlessLoading && !mIsLoadingNext.get()) {
-			if (mAdapter.isShowBottomError()) {
-				mAdapter.showBottomError(false);
-			}
-			if (!mAdapter.isShowBottomLoading()) {
-				mAdapter.showBottomLoading(true);
+			mAdapter.beginBatchUpdate();
+			try {
+				if (mAdapter.isShowBottomError()) {
+					mAdapter.showBottomError(false);
+				}
+				if (!mAdapter.isShowBottomLoading()) {
+					mAdapter.showBottomLoading(true);
+				}
+			} finally {
+				mAdapter.endBatchUpdate();
 			}
 			mIsLoadingNext.set(true);
-			mLoadListener.loadNext();
+			if (mLoadingMetrics != null) {
+				mLoadingMetrics.retryLoad(LoadingMetrics.LOAD_NEXT);
+			}
+			dispatchLoadNext();
 		} else {
 			throw new RuntimeException("Retry loading next without bottom error or endless loading");
 		}
 	}
 
 	/**
-	 * Starts the loading process.
+	 * @return The number of items inserted before the initial items minus the items evicted from
+	 * the top since the last reset. It is the position of the first initial item, or a negative
+	 * number if some initial items were evicted.
 	 */
-	public void start() {
-		reset();
+	synchronized int getItemsBeforeInitial() {
+		return mItemsBeforeInitial;
 	}
 
 	/**
-	 * Resets the loading view. All the items are removed from the adapter with the method
-	 * #clearAdapter
+	 * Continues the endless loading after the initial items displayed from a cache were
+	 * revalidated. Nothing is done if the next items are already being loaded.
+	 *
+	 * @param showBottomErrorView whether to show the bottom error view instead of checking if the
+	 *                            next items have to be loaded, when the revalidation failed
 	 */
-	public synchronized void reset() {
-		if (mEnableInitialProgressLoading && mInitialLoadingView != null) {
-			mInitialLoadingView.setVisibility(View.VISIBLE);
-			mInitialLoadingView.clearAnimation();
-			mInitialLoadingView.animate().alpha(1).setListener(null).start();
+	synchronized void continueLoadingNext(boolean showBottomErrorView) {
+		if (mLoadingInitial || mIsLoadingNext.get()) {
+			return;
 		}
-		int itemCount;
-		mAdapter.showBottomError(false);
-		mAdapter.showBottomLoading(false);
-		mAdapter.showTopLoading(false);
-		mAdapter.showTopError(false);
-		if ((itemCount = mAdapter.getAdapterItemCount()) > 0) {
-			mLoadListener.clearAdapter();
-			mAdapter.notifyDataItemRangeRemoved(0, itemCount);
+		if (showBottomErrorView) {
+			mAdapter.showBottomError(true);
+		} else {
+			checkLoadNext();
 		}
-		mIsLoadingPrevious.set(false);
-		mIsLoadingNext.set(true);
-		mLoadingInitial = true;
-		mAdapter.notifyDataSetChanged();
-		mLoadListener.loadInitial();
 	}
 
-	private void checkLoadNext() {
-		if (mLoadingInitial) {
-			throw new RuntimeException("Cannot load next while loading initial data");
+	/**
+	 * Enables the windowed paging. Only the given number of pages around the visible items are kept
+	 * in the adapter, the pages far from the visible items are evicted with the listener. The pages
+	 * evicted from the top are loaded again with LoadListener#loadPrevious() when the user scrolls
+	 * back to them and the pages evicted from the bottom are loaded again with
+	 * LoadListener#loadNext(). A page is the set of elements inserted by each load, the items
+	 * already in the adapter when the windowed paging is enabled are kept as one page.
+	 *
+	 * @param maxPages Maximum number of pages to keep in the adapter, at least 2
+	 * @param listener Listener which removes the elements of the evicted pages from the adapter
+	 *                 data, or null to disable the windowed paging
+	 */
+	public void enableWindowedPaging(int maxPages, PageEvictionListener listener) {
+		if (maxPages < 2) {
+			maxPages = 2;
 		}
-		if (mEnableEndlessLoading) {
-			mRecyclerView.requestLayout();
-			mRecyclerView.post(new Runnable() {
-				@Override
-				public void run() {
-					int lastVisibleItemPosition = mLayoutManager.findLastVisibleItemPosition();
-					if (lastVisibleItemPosition + mEndlessLoadingPreloadAhead
-							>= mAdapter.getItemCount() - 1 && !mIsLoadingNext.get()) {
-						mIsLoadingNext.set(true);
-						if (mAdapter.isShowBottomError()) {
-							mAdapter.showBottomError(false);
-						}
-						if (!mAdapter.isShowBottomLoading()) {
-							mAdapter.showBottomLoading(true);
-						}
-						mLoadListener.loadNext();
-					}
-				}
-			});
+		mWindowMaxPages = maxPages;
+		mPageEvictionListener = listener;
+		if (mPageSizes == null) {
+			mPageSizes = new int[maxPages + 2];
+		}
+		if (listener == null) {
+			// the pages are not recorded while the windowed paging is disabled
+			mPageCount = 0;
+		} else if (mPageCount == 0 && !mLoadingInitial) {
+			int itemCount = mAdapter.getAdapterItemCount();
+			if (itemCount > 0) {
+				addPage(false, itemCount);
+			}
 		}
 	}
 
-	@Override
-	public boolean onTouch(View v, MotionEvent event) {
-		if (mEnabledPullToRefreshUpdate && !mIsLoadingPrevious.get()) {
-			if (mLayoutManager.findFirstVisibleItemPosition() == 0
-					&& mLayoutManager.findViewByPosition(0).getTop() == 0) {
-
-				int pointer = MotionEventCompat.getPointerId(event, 0);
-				if (mActivePointerId == INVALID_POINTER || mActivePointerId == pointer) {
-
-					switch (event.getAction()) {
-						case MotionEvent.ACTION_MOVE:
-							if (mPullToRefreshInitialY != -1) {
-								float diff = event.getY() - mPullToRefreshInitialY;
-								if (diff > 0) {
-									setPullToRefresh(diff);
-									return true;
-								} else {
-									mPullToRefreshInitialY = -1;
-									cancelPullToRefresh();
-								}
-							} else {
-								mPullToRefreshInitialY = event.getY();
-								mActivePointerId = pointer;
-								initPullToRefresh();
-							}
-							break;
-						case MotionEvent.ACTION_CANCEL:
-						case MotionEvent.ACTION_UP:
-							if (mPullToRefreshInitialY != -1) {
-								float diff = event.getY() - mPullToRefreshInitialY;
-								mPullToRefreshInitialY = -1;
-								if (diff > mPullToRefreshDistance) {
-									startPullToRefresh();
-								} else {
-									cancelPullToRefresh();
-								}
-							}
-							mActivePointerId = INVALID_POINTER;
-							break;
-					}
-				}
-			}
+	/**
+	 * Enables the placeholder mode. In this mode the total number of items is known in advance and
+	 * set with #setTotalCount(int), usually in LoadListener#loadInitial(). The adapter contains all
+	 * the items and the ones which are not loaded yet are displayed with placeholder views. The
+	 * pages of the visible items are requested with PageLoadListener#loadPage(int, int, int, int), so
+	 * the user can scroll to any position and only the pages around it are loaded. The wrapped
+	 * adapter receives the absolute position of the items and it is only asked to create and bind
+	 * the items of the pages loaded. The endless loading and the windowed paging are not used in
+	 * this mode.
+	 *
+	 * @param pageSize         Number of items of each page
+	 * @param pageLoadListener Listener which loads the pages, or null to disable the placeholder
+	 *                         mode
+	 * @see #setTotalCount(int)
+	 * @see #finishLoadingPage(int, int, boolean)
+	 */
+	public void enablePlaceholders(int pageSize, PageLoadListener pageLoadListener) {
+		if (pageSize < 1) {
+			pageSize = 1;
+		}
+		mPageLoadListener = pageLoadListener;
+		mAdapter.setPlaceholders(pageSize, pageLoadListener);
+		mAdapter.invalidateSpanCache();
+		mAdapter.notifyDataSetChanged();
+	}
+
+	/**
+	 * Sets the total number of items in placeholder mode.
+	 *
+	 * @param totalCount Total number of items
+	 * @see #enablePlaceholders(int, PageLoadListener)
+	 */
+	public synchronized void setTotalCount(int totalCount) {
+		if (!mAdapter.isPlaceholderMode()) {
+			throw new RuntimeException("Cannot set the total count without placeholder mode");
 		}
-		if (mTouchListener != null) {
-			mTouchListener.onTouch(v, event);
+		mAdapter.setTotalCount(Math.max(totalCount, 0));
+		if (!mLoadingInitial) {
+			checkLoadNext();
 		}
-		return false;
 	}
 
 	/**
-	 * Sets a touch listener for handling gestures in the recycler view. The results of the touch
-	 * listener are not taking into account to return in the onTouch method.
+	 * This method must be called after loading a page in placeholder mode. The placeholders of the
+	 * page are replaced by the items of the wrapped adapter.
 	 *
-	 * @param touchListener The touch listener to handle the gestures in the recycler view.
+	 * @param page  The page loaded
+	 * @param error Whether there was an error loading the page, in which case it will be requested
+	 *              again when it is visible
+	 * @see PageLoadListener#loadPage(int, int, int, int)
 	 */
-	public void setOnTouchListener(View.OnTouchListener touchListener) {
-		mTouchListener = touchListener;
+	public synchronized void finishLoadingPage(int page, boolean error) {
+		if (!mAdapter.isPlaceholderMode() || page >= mAdapter.getPageCount()
+				|| mAdapter.getPageState(page) != RecyclerAdapter.PAGE_LOADING) {
+			// the page was not requested or the adapter was reset
+			return;
+		}
+		if (error) {
+			mAdapter.setPageState(page, RecyclerAdapter.PAGE_NOT_LOADED);
+		} else {
+			mAdapter.setPageState(page, RecyclerAdapter.PAGE_LOADED);
+			int pageSize = mAdapter.getPageSize();
+			int positionStart = page * pageSize;
+			mAdapter.notifyDataItemRangeChanged(positionStart,
+					Math.min(pageSize, mAdapter.getAdapterItemCount() - positionStart));
+		}
 	}
 
 	/**
-	 * Sets the pull to refresh distance, by default is 150dp. Here is set in pixles.
+	 * Same as #finishLoadingPage(int, boolean) but it does nothing if the loading helper was reset
+	 * after the load started. After a reset the same page can be requested again, so a late
+	 * result of the old request would be taken as the result of the new one.
 	 *
-	 * @param px pull to refresh distance in pixles.
+	 * @param loadGeneration The generation when the load started
+	 * @param page           The page loaded
+	 * @param error          Whether there was an error loading the page
+	 * @return true if the load was finished, false if it was ignored
+	 * @see #getLoadGeneration()
 	 */
-	public void setPullToRefreshDistance(int px) {
-		if (px > 0) {
-			mPullToRefreshDistance = px;
+	public synchronized boolean finishLoadingPage(int loadGeneration, int page, boolean error) {
+		if (loadGeneration != mLoadGeneration) {
+			return false;
 		}
+		finishLoadingPage(page, error);
+		return true;
 	}
 
-	public int getColorCircularLoading() {
-		return mColorCircularLoading;
+	/**
+	 * Sets the source of the time used to measure the latency of the loads and the scroll speed of
+	 * the adaptive preload. By default it is SystemClock#uptimeMillis(). A simulation can count the
+	 * time in frames, so its results do not depend on the speed of the device.
+	 *
+	 * @param clock The source of the time or null to use the system clock
+	 */
+	public void setClock(Clock clock) {
+		mClock = clock != null ? clock : SYSTEM_CLOCK;
 	}
 
-	public void setColorCircularLoading(int mColorCircularLoading) {
-		this.mColorCircularLoading = mColorCircularLoading;
+	/**
+	 * Sets the metrics where the latencies and results of the loads are recorded. By default there
+	 * are no metrics.
+	 *
+	 * @param loadingMetrics The metrics or null to stop recording them
+	 */
+	public void setLoadingMetrics(LoadingMetrics loadingMetrics) {
+		mLoadingMetrics = loadingMetrics;
 	}
 
-	public int getColorCircularLoadingActive() {
-		return mColorCircularLoadingActive;
+	/**
+	 * @return The metrics where the loads are recorded or null if there are no metrics
+	 * @see #setLoadingMetrics(LoadingMetrics)
+	 */
+	public LoadingMetrics getLoadingMetrics() {
+		return mLoadingMetrics;
 	}
 
-	public void setColorCircularLoadingActive(int mColorCircularLoadingActive) {
-		this.mColorCircularLoadingActive = mColorCircularLoadingActive;
+	/**
+	 * Sets a profiler to record the time spent creating and binding the view holders of each view
+	 * type in the adapter.
+	 *
+	 * @param profiler The profiler or null to stop profiling
+	 * @see RecyclerAdapter#setViewTypeProfiler(ViewTypeProfiler)
+	 */
+	public void setViewTypeProfiler(ViewTypeProfiler profiler) {
+		mAdapter.setViewTypeProfiler(profiler);
 	}
 
-	private void initPullToRefresh() {
-		if (mAdapter.isShowTopError()) {
-			mAdapter.showTopError(false);
-		}
-		if (!mAdapter.isShowTopLoading()) {
-			mAdapter.showTopLoading(true);
-		}
-		if (mTopLoadingView != null) {
-			mTopLoadingView.getLayoutParams().height = 1;
-			mTopLoadingProgressBar.setIndeterminate(false);
-			mTopLoadingView.requestLayout();
+	/**
+	 * Starts a batch update in the adapter. All the changes notified to the adapter and all the
+	 * loading and error views shown or hidden until the call to #endBatchUpdate() are merged and
+	 * notified at once to the recycler view. Batch updates can be nested. The batch must be
+	 * finished in the same frame, otherwise a RuntimeException is thrown in the next frame.
+	 *
+	 * @see #endBatchUpdate()
+	 * @see RecyclerAdapter#beginBatchUpdate()
+	 */
+	public void beginBatchUpdate() {
+		if (!mAdapter.isBatchUpdating()) {
+			ViewCompat.postOnAnimation(mRecyclerView, mCheckBatchUpdateRunnable);
 		}
-		mRecyclerView.scrollBy(-1, 0);
+		mAdapter.beginBatchUpdate();
 	}
 
-	private void setPullToRefresh(float displacement) {
+	/**
+	 * Finishes a batch update started with #beginBatchUpdate() and notifies the changes to the
+	 * recycler view.
+	 *
+	 * @see #beginBatchUpdate()
+	 * @see RecyclerAdapter#endBatchUpdate()
+	 */
+	public void endBatchUpdate() {
+		mAdapter.endBatchUpdate();
+	}
+
+	/**
+	 * Starts the loading process. The loading and error views are created in advance when the main
+	 * thread is idle. If a state was restored with #onRestoreInstanceState(Bundle) the items around
+	 * the saved position are loaded without the initial loading view.
+	 */
+	public void start() {
+		mAdapter.prewarmDecorationViews(mRecyclerView);
+		Bundle restoredState = mRestoredState;
+		mRestoredState = null;
+		if (restoredState != null) {
+			restart(restoredState);
+		} else {
+			reset();
+		}
+	}
+
+	/**
+	 * Saves the state of the loading helper: the loading flags, the first visible item and the
+	 * state of the load listener if it is a StatefulLoadListener. It should be called from the
+	 * onSaveInstanceState method of the activity or the fragment.
+	 *
+	 * @param outState Bundle where the state is saved
+	 * @see #onRestoreInstanceState(Bundle)
+	 */
+	public void onSaveInstanceState(@NonNull Bundle outState) {
+		outState.putBoolean(STATE_ENDLESS_LOADING, mEnableEndlessLoading);
+		outState.putBoolean(STATE_ENDLESS_LOADING_PREVIOUS, mEnableEndlessLoadingPrevious);
+		outState.putBoolean(STATE_KEEP_LOADING_PREVIOUS, mKeepLoadingPrevious);
+		outState.putBoolean(STATE_PULL_TO_REFRESH, mEnabledPullToRefreshUpdate);
+		if (!mLoadingInitial && !mErrorLoadingInitial && saveScrollAnchor()) {
+			outState.putInt(STATE_ANCHOR_POSITION, mScrollAnchorPosition);
+			outState.putInt(STATE_ANCHOR_OFFSET, mScrollAnchorOffset);
+		} else {
+			outState.putInt(STATE_ANCHOR_POSITION, RecyclerView.NO_POSITION);
+		}
+		if (mLoadListener instanceof StatefulLoadListener) {
+			Bundle loadState = new Bundle();
+			((StatefulLoadListener) mLoadListener).onSaveLoadState(loadState);
+			outState.putBundle(STATE_LOAD_STATE, loadState);
+		}
+	}
+
+	/**
+	 * Restores the state saved with #onSaveInstanceState(Bundle). It must be called before
+	 * #start(), which loads the items around the saved position instead of the initial items.
+	 *
+	 * @param savedInstanceState Bundle with the saved state, it can be null
+	 * @see StatefulLoadListener
+	 */
+	public void onRestoreInstanceState(Bundle savedInstanceState) {
+		if (savedInstanceState == null || !savedInstanceState.containsKey(STATE_ANCHOR_POSITION)) {
+			return;
+		}
+		mEnableEndlessLoading = savedInstanceState.getBoolean(STATE_ENDLESS_LOADING);
+		mEnableEndlessLoadingPrevious =
+				savedInstanceState.getBoolean(STATE_ENDLESS_LOADING_PREVIOUS);
+		mEnabledPullToRefreshUpdate = savedInstanceState.getBoolean(STATE_PULL_TO_REFRESH);
+		mRestoredState = savedInstanceState;
+	}
+
+	/**
+	 * Starts the loading from a restored state. The initial loading view is not displayed and the
+	 * recycler view is scrolled to the saved item once it is loaded.
+	 */
+	private synchronized void restart(Bundle state) {
+		int anchorPosition = state.getInt(STATE_ANCHOR_POSITION, RecyclerView.NO_POSITION);
+		Bundle loadState = state.getBundle(STATE_LOAD_STATE);
+		boolean keepLoadingPrevious = state.getBoolean(STATE_KEEP_LOADING_PREVIOUS, true);
+		if (anchorPosition == RecyclerView.NO_POSITION) {
+			reset();
+			return;
+		}
+		clear();
+		mKeepLoadingPrevious = keepLoadingPrevious;
+		mScrollAnchorPosition = anchorPosition;
+		mScrollAnchorOffset = state.getInt(STATE_ANCHOR_OFFSET);
+		mRestoringScrollAnchor = true;
+		if (mLoadingMetrics != null) {
+			mLoadingMetrics.startLoad(LoadingMetrics.LOAD_INITIAL);
+		}
+		if (mLoadListener instanceof StatefulLoadListener && loadState != null) {
+			((StatefulLoadListener) mLoadListener).loadRestored(loadState, anchorPosition);
+		} else {
+			mLoadListener.loadInitial();
+		}
+	}
+
+	/**
+	 * Resets the loading view. All the items are removed from the adapter with the method
+	 * #clearAdapter
+	 */
+	public synchronized void reset() {
+		if (mEnableInitialProgressLoading && mInitialLoadingView != null) {
+			mInitialLoadingView.setVisibility(View.VISIBLE);
+			mInitialLoadingView.clearAnimation();
+			mInitialLoadingView.animate().alpha(1).setListener(null).start();
+		}
+		clear();
+		if (mLoadingMetrics != null) {
+			mLoadingMetrics.startLoad(LoadingMetrics.LOAD_INITIAL);
+		}
+		mLoadListener.loadInitial();
+	}
+
+	/**
+	 * Removes all the items and cancels the loads, leaving the helper ready to load the initial
+	 * items.
+	 */
+	private void clear() {
+		mLoadGeneration++;
+		cancelAsyncLoads();
+		int itemCount;
+		mAdapter.beginBatchUpdate();
+		try {
+			mAdapter.showBottomError(false);
+			mAdapter.showBottomLoading(false);
+			mAdapter.showTopLoading(false);
+			mAdapter.showTopError(false);
+			if ((itemCount = mAdapter.getAdapterItemCount()) > 0) {
+				mLoadListener.clearAdapter();
+				if (mAdapter.isPlaceholderMode()) {
+					mAdapter.clearPlaceholders();
+				}
+				mAdapter.notifyDataItemRangeRemoved(0, itemCount);
+			}
+		} finally {
+			mAdapter.endBatchUpdate();
+		}
+		mIsLoadingPrevious.set(false);
+		mIsLoadingNext.set(true);
+		mLoadingInitial = true;
+		mLoadNextStartTime = 0;
+		mPageCount = 0;
+		mEvictedTopPages = 0;
+		mItemsBeforeInitial = 0;
+		mReloadingEvictedPage = false;
+		mKeepLoadingPrevious = true;
+		mLastCheckTime = 0;
+		mScrollVelocity = 0;
+		mRestoringScrollAnchor = false;
+		mAdapter.invalidateSpanCache();
+		mAdapter.notifyDataSetChanged();
+		if (mLoadingMetrics != null) {
+			mLoadingMetrics.cancelLoads();
+		}
+	}
+
+	/**
+	 * Schedules a check to load the next items in the next animation frame. Several calls in the
+	 * same frame only perform one check and they do not request a new layout.
+	 */
+	private void checkLoadNext() {
+		if (mLoadingInitial) {
+			throw new RuntimeException("Cannot load next while loading initial data");
+		}
+		if ((mEnableEndlessLoading || mEnableEndlessLoadingPrevious || mAdapter.isPlaceholderMode())
+			&& !mCheckLoadNextScheduled) {
+			mCheckLoadNextScheduled = true;
+			ViewCompat.postOnAnimation(mRecyclerView, mCheckLoadNextRunnable);
+		}
+	}
+
+	private void doCheckLoadNext() {
+		mCheckLoadNextScheduled = false;
+		if (mRecyclerView.isLayoutRequested()) {
+			// wait until the new items are laid out to know the last visible position, the check
+			// is scheduled again by the layout listener. Nothing is scheduled while the layout does
+			// not happen, for example when the view is gone or detached.
+			mCheckLoadNextAfterLayout = true;
+			return;
+		}
+		if (mLoadingInitial) {
+			return;
+		}
+		if (mAdapter.isPlaceholderMode()) {
+			loadVisiblePages();
+			return;
+		}
+		checkLoadPrevious();
+		if (!mEnableEndlessLoading) {
+			return;
+		}
+		int lastVisibleItemPosition = findLastVisibleItemPosition();
+		if (mAdaptivePreload) {
+			updateAdaptivePreload(lastVisibleItemPosition);
+		}
+		if (mIsLoadingNext.get()) {
+			return;
+		}
+		if (lastVisibleItemPosition + mEndlessLoadingPreloadAhead >= mAdapter.getItemCount() - 1) {
+			mIsLoadingNext.set(true);
+			mAdapter.beginBatchUpdate();
+			try {
+				if (mAdapter.isShowBottomError()) {
+					mAdapter.showBottomError(false);
+				}
+				if (!mAdapter.isShowBottomLoading()) {
+					mAdapter.showBottomLoading(true);
+				}
+			} finally {
+				mAdapter.endBatchUpdate();
+			}
+			dispatchLoadNext();
+		}
+	}
+
+	/**
+	 * Loads the previous items when the first visible item is near the first item, if there are
+	 * pages evicted from the top or the endless loading of the previous items is enabled. It does
+	 * not depend on the load of the next items.
+	 */
+	private void checkLoadPrevious() {
+		int preloadAhead;
+		if (mEnableEndlessLoadingPrevious && mKeepLoadingPrevious) {
+			preloadAhead = mEndlessLoadingPreviousPreloadAhead;
+		} else if (mEnableEndlessLoading && mEvictedTopPages > 0) {
+			preloadAhead = mEndlessLoadingPreloadAhead;
+		} else {
+			return;
+		}
+		if (mIsLoadingPrevious.get() || mAdapter.isShowTopError() || mPullToRefreshInitialY != -1) {
+			return;
+		}
+		int firstVisibleItemPosition = findFirstVisibleItemPosition();
+		if (firstVisibleItemPosition != RecyclerView.NO_POSITION
+			&& firstVisibleItemPosition - mAdapter.getHeaderCount() <= preloadAhead) {
+			showTopLoadingView();
+			mIsLoadingPrevious.set(true);
+			mReloadingEvictedPage = mEvictedTopPages > 0;
+			dispatchLoadPrevious();
+		}
+	}
+
+	/**
+	 * @return The adapter position of the first visible item or NO_POSITION
+	 */
+	private int findFirstVisibleItemPosition() {
+		if (mLayoutManager instanceof LinearLayoutManager) {
+			return ((LinearLayoutManager) mLayoutManager).findFirstVisibleItemPosition();
+		}
+		int[] positions = findStaggeredPositions(true);
+		int first = RecyclerView.NO_POSITION;
+		for (int position : positions) {
+			if (position != RecyclerView.NO_POSITION
+				&& (first == RecyclerView.NO_POSITION || position < first)) {
+				first = position;
+			}
+		}
+		return first;
+	}
+
+	/**
+	 * @return The adapter position of the last visible item or NO_POSITION
+	 */
+	private int findLastVisibleItemPosition() {
+		if (mLayoutManager instanceof LinearLayoutManager) {
+			return ((LinearLayoutManager) mLayoutManager).findLastVisibleItemPosition();
+		}
+		int[] positions = findStaggeredPositions(false);
+		int last = RecyclerView.NO_POSITION;
+		for (int position : positions) {
+			if (position > last) {
+				last = position;
+			}
+		}
+		return last;
+	}
+
+	/**
+	 * Gets the first or last visible positions of each span of the staggered grid. The same array
+	 * is reused for all the calls.
+	 */
+	private int[] findStaggeredPositions(boolean first) {
+		StaggeredGridLayoutManager layoutManager = (StaggeredGridLayoutManager) mLayoutManager;
+		int spanCount = layoutManager.getSpanCount();
+		if (mStaggeredPositions == null || mStaggeredPositions.length != spanCount) {
+			mStaggeredPositions = new int[spanCount];
+		}
+		if (first) {
+			return layoutManager.findFirstVisibleItemPositions(mStaggeredPositions);
+		} else {
+			return layoutManager.findLastVisibleItemPositions(mStaggeredPositions);
+		}
+	}
+
+	/**
+	 * Marks as loaded the pages of the items loaded in the initial load in placeholder mode and
+	 * replaces their placeholders. A page partially loaded is requested again.
+	 *
+	 * @param loadedCount Number of items loaded from the first position
+	 */
+	private void setInitialPagesLoaded(int loadedCount) {
+		int totalCount = mAdapter.getAdapterItemCount();
+		int pageSize = mAdapter.getPageSize();
+		int pages = loadedCount >= totalCount ? mAdapter.getPageCount() : loadedCount / pageSize;
+		for (int page = 0; page < pages; page++) {
+			mAdapter.setPageState(page, RecyclerAdapter.PAGE_LOADED);
+		}
+		if (pages > 0) {
+			mAdapter.notifyDataItemRangeChanged(0, Math.min(pages * pageSize, totalCount));
+		}
+	}
+
+	/**
+	 * Requests the pages not loaded of the visible items and the items around them in placeholder
+	 * mode.
+	 */
+	private void loadVisiblePages() {
+		int totalCount = mAdapter.getAdapterItemCount();
+		int firstVisible = findFirstVisibleItemPosition();
+		if (totalCount == 0 || firstVisible == RecyclerView.NO_POSITION) {
+			return;
+		}
+		int headerCount = mAdapter.getHeaderCount();
+		int first = firstVisible - headerCount - mEndlessLoadingPreloadAhead;
+		int last = findLastVisibleItemPosition() - headerCount
+				+ mEndlessLoadingPreloadAhead;
+		if (first < 0) {
+			first = 0;
+		}
+		if (last >= totalCount) {
+			last = totalCount - 1;
+		}
+		int pageSize = mAdapter.getPageSize();
+		for (int page = first / pageSize; page <= last / pageSize; page++) {
+			if (mAdapter.getPageState(page) == RecyclerAdapter.PAGE_NOT_LOADED) {
+				mAdapter.setPageState(page, RecyclerAdapter.PAGE_LOADING);
+				int positionStart = page * pageSize;
+				mPageLoadListener.loadPage(mLoadGeneration, page, positionStart,
+						Math.min(pageSize, totalCount - positionStart));
+			}
+		}
+	}
+
+	/**
+	 * Notifies that items of the adapter were replaced by other items.
+	 *
+	 * @param position Position of the first item replaced
+	 * @param oldCount Number of items removed
+	 * @param newCount Number of items inserted in their place
+	 */
+	synchronized void notifyDataItemsReplaced(int position, int oldCount, int newCount) {
+		int changed = Math.min(oldCount, newCount);
+		mAdapter.beginBatchUpdate();
+		try {
+			if (changed > 0) {
+				mAdapter.notifyDataItemRangeChanged(position, changed);
+			}
+			if (newCount > oldCount) {
+				mAdapter.notifyDataItemRangeInserted(position + changed, newCount - oldCount);
+			} else if (oldCount > newCount) {
+				mAdapter.notifyDataItemRangeRemoved(position + changed, oldCount - newCount);
+			}
+		} finally {
+			mAdapter.endBatchUpdate();
+		}
+		if (mPageCount > 0) {
+			// the replaced items are in the first page
+			mPageSizes[0] += newCount - oldCount;
+		}
+	}
+
+	/**
+	 * Keeps the size of a page loaded.
+	 *
+	 * @param first whether the page was inserted before the first element or after the last one
+	 * @param size  number of elements of the page
+	 */
+	private void addPage(boolean first, int size) {
+		if (mPageCount == mPageSizes.length) {
+			mPageSizes = Arrays.copyOf(mPageSizes, mPageCount * 2);
+		}
+		if (first) {
+			System.arraycopy(mPageSizes, 0, mPageSizes, 1, mPageCount);
+			mPageSizes[0] = size;
+		} else {
+			mPageSizes[mPageCount] = size;
+		}
+		mPageCount++;
+	}
+
+	/**
+	 * Saves the first visible item of the wrapped adapter and its offset from the edge of the
+	 * recycler view, before the previous items are inserted.
+	 *
+	 * @return true if there is a visible item to keep in the same position
+	 */
+	private boolean saveScrollAnchor() {
+		int firstVisible = findFirstVisibleItemPosition();
+		if (firstVisible == RecyclerView.NO_POSITION) {
+			return false;
+		}
+		int headerCount = mAdapter.getHeaderCount();
+		int position = Math.max(firstVisible, headerCount);
+		View view = mLayoutManager.findViewByPosition(position);
+		if (view == null) {
+			return false;
+		}
+		mScrollAnchorPosition = position - headerCount;
+		if (isReverseLayout()) {
+			mScrollAnchorOffset = mLayoutManager.getHeight() - mLayoutManager.getPaddingBottom()
+								  - mLayoutManager.getDecoratedBottom(view);
+		} else {
+			mScrollAnchorOffset = mLayoutManager.getDecoratedTop(view)
+								  - mLayoutManager.getPaddingTop();
+		}
+		return true;
+	}
+
+	/**
+	 * Scrolls to the item saved by #saveScrollAnchor() after the previous items were inserted. The
+	 * scroll is done in the layout of the inserted items, so the visible items do not move and
+	 * there is no extra layout.
+	 *
+	 * @param dataInserted Number of elements inserted before the first element
+	 */
+	private void restoreScrollAnchor(int dataInserted) {
+		int position = mAdapter.getHeaderCount() + mScrollAnchorPosition + dataInserted;
+		if (mLayoutManager instanceof LinearLayoutManager) {
+			((LinearLayoutManager) mLayoutManager).scrollToPositionWithOffset(position,
+					mScrollAnchorOffset);
+		} else {
+			((StaggeredGridLayoutManager) mLayoutManager).scrollToPositionWithOffset(position,
+					mScrollAnchorOffset);
+		}
+	}
+
+	/**
+	 * Removes the first pages while there are more pages than the maximum and they are not visible.
+	 */
+	private void evictTopPages() {
+		int firstVisible = findFirstVisibleItemPosition() - mAdapter.getHeaderCount();
+		int evicted = 0;
+		while (mPageCount > mWindowMaxPages && mPageSizes[0] <= firstVisible) {
+			int size = mPageSizes[0];
+			mPageEvictionListener.evictFirstItems(size);
+			mAdapter.notifyDataItemRangeRemoved(0, size);
+			mItemsBeforeInitial -= size;
+			firstVisible -= size;
+			mPageCount--;
+			System.arraycopy(mPageSizes, 1, mPageSizes, 0, mPageCount);
+			evicted++;
+		}
+		mEvictedTopPages += evicted;
+	}
+
+	/**
+	 * Removes the last pages while there are more pages than the maximum and they are not visible.
+	 *
+	 * @param lastVisible Position in the wrapped adapter of the last visible item after the
+	 *                    previous items were inserted
+	 */
+	private void evictBottomPages(int lastVisible) {
+		int itemCount = mAdapter.getAdapterItemCount();
+		while (mPageCount > mWindowMaxPages
+				&& itemCount - mPageSizes[mPageCount - 1] > lastVisible) {
+			int size = mPageSizes[mPageCount - 1];
+			mPageEvictionListener.evictLastItems(size);
+			itemCount -= size;
+			mAdapter.notifyDataItemRangeRemoved(itemCount, size);
+			mPageCount--;
+		}
+	}
+
+	private void dispatchLoadNext() {
+		mLoadNextStartTime = mClock.uptimeMillis();
+		if (mLoadingMetrics != null) {
+			mLoadingMetrics.startLoad(LoadingMetrics.LOAD_NEXT);
+		}
+		mLoadListener.loadNext();
+	}
+
+	private void dispatchLoadPrevious() {
+		if (mLoadingMetrics != null) {
+			mLoadingMetrics.startLoad(LoadingMetrics.LOAD_PREVIOUS);
+		}
+		mLoadListener.loadPrevious();
+	}
+
+	private void updateLoadNextLatency() {
+		if (mLoadNextStartTime > 0) {
+			float latency = mClock.uptimeMillis() - mLoadNextStartTime;
+			if (mLoadNextLatency == 0) {
+				mLoadNextLatency = latency;
+			} else {
+				mLoadNextLatency += (latency - mLoadNextLatency) * ADAPTIVE_PRELOAD_SMOOTHING;
+			}
+			mLoadNextStartTime = 0;
+		}
+	}
+
+	/**
+	 * Updates the scroll speed, in elements per millisecond, and the number of elements to preload
+	 * in order to cover the latency of the load listener.
+	 */
+	private void updateAdaptivePreload(int lastVisibleItemPosition) {
+		long now = mClock.uptimeMillis();
+		if (mLastCheckTime > 0 && now > mLastCheckTime) {
+			int advance = lastVisibleItemPosition - mLastCheckPosition;
+			float velocity = advance > 0 ? (float) advance / (now - mLastCheckTime) : 0;
+			mScrollVelocity += (velocity - mScrollVelocity) * ADAPTIVE_PRELOAD_SMOOTHING;
+		}
+		mLastCheckTime = now;
+		mLastCheckPosition = lastVisibleItemPosition;
+		int preload = (int) Math.ceil(mScrollVelocity * mLoadNextLatency * ADAPTIVE_PRELOAD_MARGIN);
+		if (preload < mAdaptivePreloadMin) {
+			preload = mAdaptivePreloadMin;
+		} else if (preload > mAdaptivePreloadMax) {
+			preload = mAdaptivePreloadMax;
+		}
+		mEndlessLoadingPreloadAhead = preload;
+	}
+
+	/**
+	 * The pull to refresh is detected with a listener added to the recycler view, so the helper
+	 * does not need to be the touch listener of any view. The events of the recycler view are
+	 * already handled and they are ignored here, the events of other views are passed to the
+	 * pull to refresh.
+	 *
+	 * @deprecated The helper does not need to be set as touch listener.
+	 */
+	@Deprecated
+	@Override
+	public boolean onTouch(View v, MotionEvent event) {
+		if (v == mRecyclerView) {
+			return false;
+		}
+		if (mPullToRefreshInitialY != -1) {
+			mPullToRefreshTouchListener.onTouchEvent(mRecyclerView, event);
+		} else {
+			mPullToRefreshTouchListener.onInterceptTouchEvent(mRecyclerView, event);
+		}
+		return mPullToRefreshInitialY != -1;
+	}
+
+	/**
+	 * Sets a touch listener in the recycler view. The pull to refresh does not use the touch
+	 * listener of the recycler view, so it can be set directly in the view too.
+	 *
+	 * @param touchListener The touch listener to handle the gestures in the recycler view.
+	 */
+	public void setOnTouchListener(View.OnTouchListener touchListener) {
+		mRecyclerView.setOnTouchListener(touchListener);
+	}
+
+	/**
+	 * Updates whether the recycler view is scrolled to the top. It is called after the scroll
+	 * changes and when a gesture starts, so the touch events do not need to look at the views.
+	 */
+	private void updateAtTop() {
+		// with a reverse layout the first item is at the bottom, the pull to refresh is not used
+		mAtTop = !isReverseLayout() && !ViewCompat.canScrollVertically(mRecyclerView, -1);
+	}
+
+	private boolean isReverseLayout() {
+		if (mLayoutManager instanceof LinearLayoutManager) {
+			return ((LinearLayoutManager) mLayoutManager).getReverseLayout();
+		}
+		return ((StaggeredGridLayoutManager) mLayoutManager).getReverseLayout();
+	}
+
+	/**
+	 * Changes the pointer which drives the pull to refresh keeping the current distance pulled.
+	 */
+	private void setActivePointer(MotionEvent event, int pointerIndex) {
+		mActivePointerId = MotionEventCompat.getPointerId(event, pointerIndex);
+		float y = MotionEventCompat.getY(event, pointerIndex);
+		if (mPullToRefreshInitialY != -1) {
+			mPullToRefreshInitialY = y - mPullToRefreshDiff;
+		} else {
+			mTouchDownY = y;
+		}
+	}
+
+	private void finishPullGesture(boolean cancel) {
+		if (mPullToRefreshInitialY != -1) {
+			mPullToRefreshInitialY = -1;
+			if (!cancel && mPullToRefreshDiff > mPullToRefreshDistance) {
+				startPullToRefresh();
+			} else {
+				cancelPullToRefresh();
+			}
+		}
+		mPullToRefreshDiff = 0;
+		mActivePointerId = INVALID_POINTER;
+	}
+
+	/**
+	 * Touch listener of the items of the recycler view which detects the pull to refresh. It only
+	 * intercepts the gesture when the user pulls down from the top of the list, otherwise the
+	 * events go to the recycler view. The active pointer is followed when other pointers go up or
+	 * down. Nothing is allocated and no views are looked up while handling the events.
+	 */
+	private class PullToRefreshTouchListener implements RecyclerView.OnItemTouchListener {
+
+		@Override
+		public boolean onInterceptTouchEvent(RecyclerView rv, MotionEvent event) {
+			switch (MotionEventCompat.getActionMasked(event)) {
+				case MotionEvent.ACTION_DOWN:
+					updateAtTop();
+					mPullToRefreshInitialY = -1;
+					mPullToRefreshDiff = 0;
+					setActivePointer(event, 0);
+					break;
+				case MotionEventCompat.ACTION_POINTER_DOWN:
+					setActivePointer(event, MotionEventCompat.getActionIndex(event));
+					break;
+				case MotionEventCompat.ACTION_POINTER_UP:
+					onPointerUp(event);
+					break;
+				case MotionEvent.ACTION_MOVE:
+					if (mEnabledPullToRefreshUpdate && mAtTop && !mIsLoadingPrevious.get()
+							&& mActivePointerId != INVALID_POINTER) {
+						int pointerIndex = MotionEventCompat.findPointerIndex(event, mActivePointerId);
+						if (pointerIndex >= 0) {
+							float y = MotionEventCompat.getY(event, pointerIndex);
+							if (y - mTouchDownY > mTouchSlop) {
+								mPullToRefreshInitialY = y;
+								mPullToRefreshDiff = 0;
+								initPullToRefresh();
+								ViewParent parent = rv.getParent();
+								if (parent != null) {
+									// nested scrolling parents must not steal the gesture
+									parent.requestDisallowInterceptTouchEvent(true);
+								}
+								return true;
+							}
+						}
+					}
+					break;
+				case MotionEvent.ACTION_UP:
+				case MotionEvent.ACTION_CANCEL:
+					mActivePointerId = INVALID_POINTER;
+					break;
+			}
+			return false;
+		}
+
+		@Override
+		public void onTouchEvent(RecyclerView rv, MotionEvent event) {
+			switch (MotionEventCompat.getActionMasked(event)) {
+				case MotionEventCompat.ACTION_POINTER_DOWN:
+					setActivePointer(event, MotionEventCompat.getActionIndex(event));
+					break;
+				case MotionEventCompat.ACTION_POINTER_UP:
+					onPointerUp(event);
+					break;
+				case MotionEvent.ACTION_MOVE:
+					if (mPullToRefreshInitialY != -1) {
+						int pointerIndex = MotionEventCompat.findPointerIndex(event, mActivePointerId);
+						if (pointerIndex >= 0) {
+							float diff = MotionEventCompat.getY(event, pointerIndex)
+										 - mPullToRefreshInitialY;
+							// the event which started the pull is received again with no difference
+							if (diff >= 0) {
+								mPullToRefreshDiff = diff;
+								setPullToRefresh(diff);
+							} else {
+								finishPullGesture(true);
+								releaseGesture(rv, event);
+							}
+						}
+					}
+					break;
+				case MotionEvent.ACTION_UP:
+					finishPullGesture(false);
+					break;
+				case MotionEvent.ACTION_CANCEL:
+					finishPullGesture(true);
+					break;
+			}
+		}
+
+		/**
+		 * Gives the rest of the gesture back to the recycler view when the pull ends before the
+		 * finger goes up. The listener receives the events until the gesture ends, so a down event
+		 * is sent to the recycler view to clear the listener and to start scrolling from the
+		 * current position.
+		 */
+		private void releaseGesture(RecyclerView rv, MotionEvent event) {
+			MotionEvent down = MotionEvent.obtain(event);
+			down.setAction(MotionEvent.ACTION_DOWN);
+			rv.onTouchEvent(down);
+			down.recycle();
+		}
+
+		private void onPointerUp(MotionEvent event) {
+			int pointerIndex = MotionEventCompat.getActionIndex(event);
+			if (MotionEventCompat.getPointerId(event, pointerIndex) == mActivePointerId) {
+				// the active pointer went up, continue with other pointer
+				setActivePointer(event, pointerIndex == 0 ? 1 : 0);
+			}
+		}
+	}
+
+	/**
+	 * Whether the pull to refresh moves the items with a translation or not. By default the top
+	 * loading view is inserted when the pull starts and its height changes while the user pulls,
+	 * which requires a layout of the recycler view for each touch event. With the translation the
+	 * visible items are moved down and the indicator is drawn by an item decoration, so no layout is
+	 * performed while the user pulls. The top loading view is only inserted if the pull to refresh
+	 * is done.
+	 *
+	 * @param enable whether to use a translation for the pull to refresh or not
+	 * @see #enablePullToRefreshUpdate(boolean)
+	 */
+	public void enablePullToRefreshTranslation(boolean enable) {
+		if (mPullToRefreshTranslation != enable) {
+			mPullToRefreshTranslation = enable;
+			if (enable) {
+				if (mPullToRefreshDecoration == null) {
+					mPullToRefreshDecoration = new PullToRefreshDecoration();
+				}
+				mRecyclerView.addItemDecoration(mPullToRefreshDecoration);
+			} else {
+				setPullToRefreshOffset(0);
+				mRecyclerView.removeItemDecoration(mPullToRefreshDecoration);
+			}
+		}
+	}
+
+	/**
+	 * Sets the pull to refresh distance, by default is 150dp. Here is set in pixles.
+	 *
+	 * @param px pull to refresh distance in pixles.
+	 */
+	public void setPullToRefreshDistance(int px) {
+		if (px > 0) {
+			mPullToRefreshDistance = px;
+		}
+	}
+
+	public int getColorCircularLoading() {
+		return mColorCircularLoading;
+	}
+
+	public void setColorCircularLoading(int mColorCircularLoading) {
+		this.mColorCircularLoading = mColorCircularLoading;
+	}
+
+	public int getColorCircularLoadingActive() {
+		return mColorCircularLoadingActive;
+	}
+
+	public void setColorCircularLoadingActive(int mColorCircularLoadingActive) {
+		this.mColorCircularLoadingActive = mColorCircularLoadingActive;
+	}
+
+	private void initPullToRefresh() {
+		if (mPullToRefreshTranslation) {
+			if (mPullToRefreshUpdateAnimation != null && mPullToRefreshUpdateAnimation.isRunning()) {
+				mPullToRefreshUpdateAnimation.cancel();
+			}
+			if (mAdapter.isShowTopError()) {
+				mAdapter.showTopError(false);
+			}
+			return;
+		}
+		mAdapter.beginBatchUpdate();
+		try {
+			if (mAdapter.isShowTopError()) {
+				mAdapter.showTopError(false);
+			}
+			if (!mAdapter.isShowTopLoading()) {
+				mAdapter.showTopLoading(true);
+			}
+		} finally {
+			mAdapter.endBatchUpdate();
+		}
+		if (mTopLoadingView != null) {
+			mTopLoadingView.getLayoutParams().height = 1;
+			mTopLoadingProgressBar.setIndeterminate(false);
+			mTopLoadingView.requestLayout();
+		}
+		mRecyclerView.scrollBy(-1, 0);
+	}
+
+	private void setPullToRefresh(float displacement) {
 		float ratioPull = displacement / mPullToRefreshDistance;
 		if (ratioPull > 1) {
 			ratioPull = 1;
 		}
+		if (mPullToRefreshTranslation) {
+			int indicatorHeight = mPullToRefreshDecoration.mIndicatorHeight;
+			if (displacement > indicatorHeight) {
+				displacement = indicatorHeight + (displacement - indicatorHeight) / 2;
+			}
+			mPullToRefreshDecoration.setProgress(ratioPull);
+			setPullToRefreshOffset(displacement);
+			return;
+		}
 		if (displacement > mLoadingViewOriginalHeight) {
 			displacement = mLoadingViewOriginalHeight +
 					(displacement - mLoadingViewOriginalHeight) / 2;
@@ -584,30 +1846,45 @@ public class LoadingHelper<k extends RecyclerView.ViewHolder> implements View.On
 		if (mPullToRefreshUpdateAnimation != null && mPullToRefreshUpdateAnimation.isRunning()) {
 			mPullToRefreshUpdateAnimation.cancel();
 		}
+		if (mPullToRefreshTranslation) {
+			if (mPullToRefreshOffset > 0) {
+				startPullToRefreshAnimation(ANIMATION_OFFSET, mPullToRefreshOffset, 0);
+			}
+			if (mAdapter.getAdapterItemCount() == 0) {
+				mAdapter.showTopError(true);
+			}
+			return;
+		}
 		if (mTopLoadingView != null) {
-			float alpha = mTopLoadingView.getAlpha();
-			mPullToRefreshUpdateAnimation = ValueAnimator.ofFloat(alpha, 0);
-			mPullToRefreshUpdateAnimation.setDuration(mPullToRefreshAnimationDuration);
-			mPullToRefreshUpdateAnimation.setInterpolator(mDecelerateInterpolator);
-			mPullToRefreshUpdateAnimation.addUpdateListener(
-					new ValueAnimator.AnimatorUpdateListener() {
-						@Override
-						public void onAnimationUpdate(ValueAnimator valueAnimator) {
-							float val = (Float) valueAnimator.getAnimatedValue();
-							mTopLoadingView.setAlpha(val);
-						}
-					});
-			mPullToRefreshUpdateAnimation.start();
+			startPullToRefreshAnimation(ANIMATION_ALPHA, mTopLoadingView.getAlpha(), 0);
 		}
-		mAdapter.showTopLoading(false);
-		if (mAdapter.getAdapterItemCount() == 0) {
-			mAdapter.showTopError(true);
+		mAdapter.beginBatchUpdate();
+		try {
+			mAdapter.showTopLoading(false);
+			if (mAdapter.getAdapterItemCount() == 0) {
+				mAdapter.showTopError(true);
+			}
+		} finally {
+			mAdapter.endBatchUpdate();
 		}
 	}
 
 	private void startPullToRefresh() {
+		if (mPullToRefreshTranslation) {
+			if (mPullToRefreshUpdateAnimation != null && mPullToRefreshUpdateAnimation.isRunning()) {
+				mPullToRefreshUpdateAnimation.cancel();
+			}
+			setPullToRefreshOffset(0);
+		}
+		// the pull to refresh loads new items, not the evicted pages
+		mReloadingEvictedPage = false;
 		if (mLoadingInitial) {
 			reset();
+		} else if (mPullToRefreshTranslation) {
+			// the top loading view is only inserted once the pull to refresh is done
+			showTopLoadingView();
+			mIsLoadingPrevious.set(true);
+			dispatchLoadPrevious();
 		} else {
 			mIsLoadingPrevious.set(true);
 			mTopLoadingProgressBar.setIndeterminate(true);
@@ -616,23 +1893,99 @@ public class LoadingHelper<k extends RecyclerView.ViewHolder> implements View.On
 			}
 			int height = mTopLoadingView.getHeight();
 			if (height != mLoadingViewOriginalHeight) {
-				mPullToRefreshUpdateAnimation = ValueAnimator.ofInt(height, mLoadingViewOriginalHeight);
-				mPullToRefreshUpdateAnimation.setDuration(mPullToRefreshAnimationDuration);
-				mPullToRefreshUpdateAnimation.setInterpolator(mDecelerateInterpolator);
-				mPullToRefreshUpdateAnimation.addUpdateListener(
-						new ValueAnimator.AnimatorUpdateListener() {
-							@Override
-							public void onAnimationUpdate(ValueAnimator valueAnimator) {
-								int val = (Integer) valueAnimator.getAnimatedValue();
-								ViewGroup.LayoutParams layoutParams = mTopLoadingView.getLayoutParams();
-								layoutParams.height = val;
-								mTopLoadingView.setLayoutParams(layoutParams);
+				startPullToRefreshAnimation(ANIMATION_HEIGHT, height, mLoadingViewOriginalHeight);
+			}
+			dispatchLoadPrevious();
+		}
+	}
+
+	/**
+	 * Animates the offset of the translation, the alpha or the height of the top loading view. The
+	 * same animator and listener are reused for all the animations and the values are computed from
+	 * the animated fraction, so the frames of the animation do not allocate objects.
+	 */
+	private void startPullToRefreshAnimation(int type, float from, float to) {
+		if (mPullToRefreshUpdateAnimation == null) {
+			mPullToRefreshUpdateAnimation = ValueAnimator.ofFloat(0, 1);
+			mPullToRefreshUpdateAnimation.setInterpolator(mDecelerateInterpolator);
+			mPullToRefreshUpdateAnimation.addUpdateListener(
+					new ValueAnimator.AnimatorUpdateListener() {
+						@Override
+						public void onAnimationUpdate(ValueAnimator valueAnimator) {
+							float from = mPullToRefreshAnimationFrom;
+							float to = mPullToRefreshAnimationTo;
+							float value = from + (to - from) * valueAnimator.getAnimatedFraction();
+							switch (mPullToRefreshAnimationType) {
+								case ANIMATION_OFFSET:
+									setPullToRefreshOffset(value);
+									break;
+								case ANIMATION_ALPHA:
+									mTopLoadingView.setAlpha(value);
+									break;
+								case ANIMATION_HEIGHT:
+									ViewGroup.LayoutParams layoutParams =
+											mTopLoadingView.getLayoutParams();
+									layoutParams.height = (int) value;
+									mTopLoadingView.setLayoutParams(layoutParams);
+									break;
 							}
-						});
-				mPullToRefreshUpdateAnimation.setDuration(mPullToRefreshAnimationDuration);
-				mPullToRefreshUpdateAnimation.start();
+						}
+					});
+		} else if (mPullToRefreshUpdateAnimation.isRunning()) {
+			mPullToRefreshUpdateAnimation.cancel();
+		}
+		mPullToRefreshAnimationType = type;
+		mPullToRefreshAnimationFrom = from;
+		mPullToRefreshAnimationTo = to;
+		mPullToRefreshUpdateAnimation.setDuration(mPullToRefreshAnimationDuration);
+		mPullToRefreshUpdateAnimation.start();
+	}
+
+	/**
+	 * Moves the visible items down the given offset with a translation, so the pull to refresh
+	 * indicator drawn by the decoration is visible. It does not perform any layout. The change of
+	 * the offset is added to the translation of the items, so the translations of the item
+	 * animator are kept.
+	 */
+	private void setPullToRefreshOffset(float offset) {
+		float delta = offset - mPullToRefreshOffset;
+		mPullToRefreshOffset = offset;
+		if (delta != 0) {
+			for (int i = mRecyclerView.getChildCount() - 1; i >= 0; i--) {
+				View child = mRecyclerView.getChildAt(i);
+				child.setTranslationY(child.getTranslationY() + delta);
 			}
-			mLoadListener.loadPrevious();
+		}
+		mRecyclerView.invalidate();
+	}
+
+	/**
+	 * @return The span size lookup of the grid layout manager, or null if it is not a grid
+	 */
+	GridSpanSize getGridSpanSize() {
+		return mGridSpanSize;
+	}
+
+	/**
+	 * Adds the offset of the pull to refresh to a view attached while the items are translated.
+	 *
+	 * @param view The view of the item attached to the recycler view
+	 */
+	void onItemViewAttached(View view) {
+		if (mPullToRefreshOffset != 0) {
+			view.setTranslationY(view.getTranslationY() + mPullToRefreshOffset);
+		}
+	}
+
+	/**
+	 * Removes the offset of the pull to refresh from a view detached while the items are
+	 * translated, so it is not recycled with the offset.
+	 *
+	 * @param view The view of the item detached from the recycler view
+	 */
+	void onItemViewDetached(View view) {
+		if (mPullToRefreshOffset != 0) {
+			view.setTranslationY(view.getTranslationY() - mPullToRefreshOffset);
 		}
 	}
 
@@ -654,9 +2007,14 @@ public class LoadingHelper<k extends RecyclerView.ViewHolder> implements View.On
 		mTopLoadingView = itemView;
 		mTopLoadingProgressBar = topLoading;
 //		mTopCircularLoadingDrawable = (CircularLoadingDrawable)topLoading.getProgressDrawable();
-		mTopLoadingView.measure(View.MeasureSpec.UNSPECIFIED, View.MeasureSpec.UNSPECIFIED);
-		mLoadingViewOriginalHeight = mTopLoadingView.getMeasuredHeight();
-		if (!mRetryLoadingPrevious) {
+		if (mLoadingViewOriginalHeight == 0) {
+			mTopLoadingView.measure(View.MeasureSpec.UNSPECIFIED, View.MeasureSpec.UNSPECIFIED);
+			mLoadingViewOriginalHeight = mTopLoadingView.getMeasuredHeight();
+		}
+		if (mRetryLoadingPrevious) {
+			mTopLoadingView.getLayoutParams().height = mLoadingViewOriginalHeight;
+			mTopLoadingProgressBar.setIndeterminate(true);
+		} else {
 			mTopLoadingView.getLayoutParams().height = 1;
 			mTopLoadingProgressBar.setIndeterminate(false);
 			mTopLoadingView.requestLayout();
@@ -763,55 +2121,304 @@ public class LoadingHelper<k extends RecyclerView.ViewHolder> implements View.On
 	}
 
 	/**
-	 * A replacement for SpanSizeLookup for the GridLayoutManager of the RecyclerView.
+	 * Load listener which can save the keys of the pages loaded and restore them, so after a
+	 * configuration change or the death of the process only the items around the saved position
+	 * are loaded.
+	 *
+	 * @see #onSaveInstanceState(Bundle)
+	 * @see #onRestoreInstanceState(Bundle)
+	 */
+	public interface StatefulLoadListener extends LoadListener {
+
+		/**
+		 * Saves the keys needed to load again the items around the first visible item.
+		 *
+		 * @param outState Bundle where the state is saved
+		 */
+		public void onSaveLoadState(Bundle outState);
+
+		/**
+		 * Method called instead of #loadInitial() when the state is restored. It must load the
+		 * items around the saved position using the saved keys. After finish the loading you must
+		 * update the adapter data and call the method
+		 * #finishLoadingRestored(boolean, int, int, boolean)
+		 *
+		 * @param savedLoadState The state saved in #onSaveLoadState(Bundle)
+		 * @param anchorPosition Position of the first visible item when the state was saved
+		 * @see #finishLoadingRestored(boolean, int, int, boolean)
+		 */
+		public void loadRestored(Bundle savedLoadState, int anchorPosition);
+	}
+
+	/**
+	 * Interface called to remove the elements of the pages evicted in the windowed paging. The
+	 * listener must only remove the elements from the data of the adapter, the loading helper
+	 * notifies the changes to the adapter.
+	 *
+	 * @see #enableWindowedPaging(int, PageEvictionListener)
+	 */
+	public interface PageEvictionListener {
+
+		/**
+		 * Removes the first elements of the adapter data. The next call to
+		 * LoadListener#loadPrevious() must load them again.
+		 *
+		 * @param count number of elements to remove
+		 */
+		public void evictFirstItems(int count);
+
+		/**
+		 * Removes the last elements of the adapter data. The next call to LoadListener#loadNext()
+		 * must load them again.
+		 *
+		 * @param count number of elements to remove
+		 */
+		public void evictLastItems(int count);
+	}
+
+	/**
+	 * Source of the time of the loading helper.
+	 *
+	 * @see #setClock(Clock)
+	 */
+	public interface Clock {
+
+		/**
+		 * @return The time in milliseconds, greater than 0 and never decreasing
+		 */
+		public long uptimeMillis();
+	}
+
+	/**
+	 * Interface called to load the pages in placeholder mode.
+	 *
+	 * @see #enablePlaceholders(int, PageLoadListener)
+	 */
+	public interface PageLoadListener {
+
+		/**
+		 * Method called when the items of a page are visible or near the visible items and they
+		 * are not loaded. After finish the loading you must update the adapter data and call the
+		 * method #finishLoadingPage(int, int, boolean)
+		 *
+		 * @param loadGeneration The generation of the loads when the page is requested
+		 * @param page           The page to load
+		 * @param positionStart  Position of the first item of the page
+		 * @param itemCount      Number of items of the page
+		 * @see #finishLoadingPage(int, int, boolean)
+		 */
+		public void loadPage(int loadGeneration, int page, int positionStart, int itemCount);
+
+		/**
+		 * @param root parent view of the new view created
+		 * @return Create a new placeholder view for an item not loaded. It should be cheap to
+		 * create and to display.
+		 */
+		public View createPlaceholderView(ViewGroup root);
+	}
+
+	/**
+	 * Item decoration which draws the pull to refresh indicator over the space left by the
+	 * translation of the items.
+	 */
+	private class PullToRefreshDecoration extends RecyclerView.ItemDecoration {
+
+		private final CircularLoadingDrawable mDrawable;
+		private final int mIndicatorSize;
+		private final int mIndicatorHeight;
+
+		PullToRefreshDecoration() {
+			Resources resources = mRecyclerView.getContext().getResources();
+			mIndicatorSize = resources.getDimensionPixelSize(
+					R.dimen.loading_helper_pull_refresh_indicator_size);
+			mIndicatorHeight = mIndicatorSize + 2 * resources.getDimensionPixelSize(
+					R.dimen.loading_helper_loading_progress_bar_margin);
+			mDrawable = new CircularLoadingDrawable(mRecyclerView.getContext(),
+					mColorCircularLoading, mColorCircularLoadingActive);
+		}
+
+		void setProgress(float ratioPull) {
+			mDrawable.setLevel((int) (ratioPull * 10000));
+		}
+
+		@Override
+		public void onDraw(Canvas canvas, RecyclerView parent, RecyclerView.State state) {
+			float offset = mPullToRefreshOffset;
+			if (offset <= 0) {
+				return;
+			}
+			float ratio = offset / mIndicatorHeight;
+			if (ratio > 1) {
+				ratio = 1;
+			}
+			int size = (int) (mIndicatorSize * ratio);
+			int left = (parent.getWidth() - size) / 2;
+			int top = (int) ((offset - size) / 2);
+			// the colors can change after the decoration is created
+			mDrawable.setColors(mColorCircularLoading, mColorCircularLoadingActive);
+			mDrawable.setBounds(left, top, left + size, top + size);
+			mDrawable.setAlpha((int) (255 * ratio));
+			mDrawable.draw(canvas);
+		}
+	}
+
+	/**
+	 * A replacement for SpanSizeLookup for the GridLayoutManager of the RecyclerView. The header,
+	 * loading, error and footer views use the whole width. The span indices of the items are
+	 * cached, so they are not computed again from the first item for each position. The cache is
+	 * updated by the adapter when the items change, appending items does not invalidate it and
+	 * prepending a page which fills complete rows only shifts it.
 	 *
 	 * @see android.support.v7.widget.GridLayoutManager.SpanSizeLookup
 	 */
 	public class GridSpanSize extends GridLayoutManager.SpanSizeLookup {
 
+		private static final int INITIAL_CACHE_SIZE = 64;
+
 		private GridLayoutManager.SpanSizeLookup mSpanSizeLookUpWrapped;
 
-		private int mSpanCount;
+		private GridLayoutManager mGridLayoutManager;
+
+		private int mCachedSpanCount;
+
+		private int[] mSpanSizes;
+
+		private int[] mSpanIndices;
+
+		private int mCachedCount;
 
 		public GridSpanSize(GridLayoutManager gridLayoutManager) {
 			mSpanSizeLookUpWrapped = gridLayoutManager.getSpanSizeLookup();
-			mSpanCount = gridLayoutManager.getSpanCount();
+			mGridLayoutManager = gridLayoutManager;
+			mSpanSizes = new int[INITIAL_CACHE_SIZE];
+			mSpanIndices = new int[INITIAL_CACHE_SIZE];
 		}
 
 		@Override
 		public int getSpanSize(int position) {
-			if (mAdapter.isShowTopLoading()) {
-				position -= 1;
-			}
-			if (mAdapter.isShowTopError()) {
-				position -= 1;
-			}
-			if (mAdapter.isShowHeader()) {
-				position -= 1;
-			}
-			if (position < 0 || position > mAdapter.getItemCount()) {
-				return mSpanCount;
+			position -= mAdapter.getHeaderCount();
+			int spanCount = mGridLayoutManager.getSpanCount();
+			if (position < 0 || position >= mAdapter.getAdapterItemCount()) {
+				return spanCount;
 			} else {
-				return mSpanSizeLookUpWrapped.getSpanSize(position);
+				return Math.min(mSpanSizeLookUpWrapped.getSpanSize(position), spanCount);
 			}
 		}
 
 		@Override
 		public int getSpanIndex(int position, int spanCount) {
-			if (mAdapter.isShowTopLoading()) {
-				position -= 1;
+			position -= mAdapter.getHeaderCount();
+			if (position < 0 || position >= mAdapter.getAdapterItemCount()) {
+				return 0;
+			} else {
+				fillCache(position, spanCount);
+				return mSpanIndices[position];
 			}
-			if (mAdapter.isShowTopError()) {
-				position -= 1;
+		}
+
+		/**
+		 * Computes the span indices of the items until the position.
+		 */
+		private void fillCache(int position, int spanCount) {
+			if (spanCount != mCachedSpanCount) {
+				mCachedSpanCount = spanCount;
+				mCachedCount = 0;
 			}
-			if (mAdapter.isShowHeader()) {
-				position -= 1;
+			if (position < mCachedCount) {
+				return;
 			}
-			if (position < 0 || position > mAdapter.getItemCount()) {
-				return spanCount - 1;
-			} else {
-				return mSpanSizeLookUpWrapped.getSpanIndex(position, spanCount);
+			ensureCapacity(position + 1);
+			int span = getSpanBefore(mCachedCount);
+			for (int i = mCachedCount; i <= position; i++) {
+				int size = Math.min(mSpanSizeLookUpWrapped.getSpanSize(i), spanCount);
+				if (span + size > spanCount) {
+					span = 0;
+				}
+				mSpanSizes[i] = size;
+				mSpanIndices[i] = span;
+				span += size;
+				if (span == spanCount) {
+					span = 0;
+				}
+			}
+			mCachedCount = position + 1;
+		}
+
+		/**
+		 * @return The spans used in the current row before the item in the position
+		 */
+		private int getSpanBefore(int position) {
+			if (position == 0) {
+				return 0;
 			}
+			int span = mSpanIndices[position - 1] + mSpanSizes[position - 1];
+			return span == mCachedSpanCount ? 0 : span;
+		}
+
+		private void ensureCapacity(int capacity) {
+			if (mSpanSizes.length < capacity) {
+				int size = Math.max(capacity, mSpanSizes.length * 2);
+				mSpanSizes = Arrays.copyOf(mSpanSizes, size);
+				mSpanIndices = Arrays.copyOf(mSpanIndices, size);
+			}
+		}
+
+		/**
+		 * Clears the cached span indices.
+		 */
+		public void invalidateCache() {
+			mCachedCount = 0;
+		}
+
+		void onItemRangeChanged(int positionStart, int itemCount) {
+			int end = Math.min(positionStart + itemCount, mCachedCount);
+			for (int i = positionStart; i < end; i++) {
+				if (Math.min(mSpanSizeLookUpWrapped.getSpanSize(i), mCachedSpanCount)
+					!= mSpanSizes[i]) {
+					mCachedCount = i;
+					return;
+				}
+			}
+		}
+
+		void onItemRangeInserted(int positionStart, int itemCount) {
+			if (positionStart >= mCachedCount) {
+				// appended items are computed when they are needed
+				return;
+			}
+			int spanBefore = getSpanBefore(positionStart);
+			int oldCount = mCachedCount;
+			ensureCapacity(oldCount + itemCount);
+			System.arraycopy(mSpanSizes, positionStart, mSpanSizes, positionStart + itemCount,
+							 oldCount - positionStart);
+			System.arraycopy(mSpanIndices, positionStart, mSpanIndices, positionStart + itemCount,
+							 oldCount - positionStart);
+			mCachedCount = positionStart;
+			fillCache(positionStart + itemCount - 1, mCachedSpanCount);
+			if (getSpanBefore(positionStart + itemCount) == spanBefore) {
+				// the next items keep their span indices
+				mCachedCount = oldCount + itemCount;
+			}
+		}
+
+		void onItemRangeRemoved(int positionStart, int itemCount) {
+			if (positionStart >= mCachedCount) {
+				return;
+			}
+			int end = positionStart + itemCount;
+			if (end >= mCachedCount || getSpanBefore(positionStart) != getSpanBefore(end)) {
+				mCachedCount = positionStart;
+				return;
+			}
+			// the next items keep their span indices
+			int moved = mCachedCount - end;
+			System.arraycopy(mSpanSizes, end, mSpanSizes, positionStart, moved);
+			System.arraycopy(mSpanIndices, end, mSpanIndices, positionStart, moved);
+			mCachedCount -= itemCount;
+		}
+
+		void onItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
+			mCachedCount = Math.min(mCachedCount, Math.min(fromPosition, toPosition));
 		}
 	}
 }
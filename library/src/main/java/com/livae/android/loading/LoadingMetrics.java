@@ -0,0 +1,184 @@
+package com.livae.android.loading;
+
+import android.os.SystemClock;
+
+/**
+ * Metrics of the loads performed by a loading helper. It records the time in milliseconds from the
+ * call to the load listener until the matching finish method of the loading helper is called, the
+ * number of errors, retries and items inserted for each type of load. Recording the metrics does
+ * not allocate memory, use #snapshot() to get a copy which can be sent to a telemetry service.
+ *
+ * @see LoadingHelper#setLoadingMetrics(LoadingMetrics)
+ */
+public class LoadingMetrics {
+
+	/**
+	 * Load of the initial items.
+	 *
+	 * @see LoadingHelper.LoadListener#loadInitial()
+	 */
+	public static final int LOAD_INITIAL = 0;
+
+	/**
+	 * Load of the next items.
+	 *
+	 * @see LoadingHelper.LoadListener#loadNext()
+	 */
+	public static final int LOAD_NEXT = 1;
+
+	/**
+	 * Load of the previous items.
+	 *
+	 * @see LoadingHelper.LoadListener#loadPrevious()
+	 */
+	public static final int LOAD_PREVIOUS = 2;
+
+	private static final int LOAD_TYPES = 3;
+
+	private final LatencyHistogram[] mLatencies;
+	private final long[] mErrors;
+	private final long[] mRetries;
+	private final long[] mItemsInserted;
+	private final long[] mStartTimes;
+
+	private OnLoadFinishedListener mOnLoadFinishedListener;
+
+	public LoadingMetrics() {
+		mLatencies = new LatencyHistogram[LOAD_TYPES];
+		for (int i = 0; i < LOAD_TYPES; i++) {
+			mLatencies[i] = new LatencyHistogram();
+		}
+		mErrors = new long[LOAD_TYPES];
+		mRetries = new long[LOAD_TYPES];
+		mItemsInserted = new long[LOAD_TYPES];
+		mStartTimes = new long[LOAD_TYPES];
+	}
+
+	private LoadingMetrics(LoadingMetrics metrics) {
+		mLatencies = new LatencyHistogram[LOAD_TYPES];
+		for (int i = 0; i < LOAD_TYPES; i++) {
+			mLatencies[i] = new LatencyHistogram(metrics.mLatencies[i]);
+		}
+		mErrors = metrics.mErrors.clone();
+		mRetries = metrics.mRetries.clone();
+		mItemsInserted = metrics.mItemsInserted.clone();
+		mStartTimes = new long[LOAD_TYPES];
+	}
+
+	/**
+	 * Sets a listener which is called each time a load finishes.
+	 *
+	 * @param listener The listener
+	 */
+	public void setOnLoadFinishedListener(OnLoadFinishedListener listener) {
+		mOnLoadFinishedListener = listener;
+	}
+
+	synchronized void startLoad(int loadType) {
+		mStartTimes[loadType] = SystemClock.uptimeMillis();
+	}
+
+	synchronized void retryLoad(int loadType) {
+		mRetries[loadType]++;
+	}
+
+	void finishLoad(int loadType, boolean error, int itemsInserted) {
+		long latency;
+		synchronized (this) {
+			long startTime = mStartTimes[loadType];
+			if (startTime == 0) {
+				return;
+			}
+			mStartTimes[loadType] = 0;
+			latency = SystemClock.uptimeMillis() - startTime;
+			mLatencies[loadType].record(latency);
+			if (error) {
+				mErrors[loadType]++;
+			} else if (itemsInserted > 0) {
+				mItemsInserted[loadType] += itemsInserted;
+			}
+		}
+		if (mOnLoadFinishedListener != null) {
+			mOnLoadFinishedListener.onLoadFinished(loadType, latency, error, itemsInserted);
+		}
+	}
+
+	synchronized void cancelLoads() {
+		for (int i = 0; i < LOAD_TYPES; i++) {
+			mStartTimes[i] = 0;
+		}
+	}
+
+	/**
+	 * @param loadType Type of load
+	 * @return Histogram with the latencies in milliseconds of the type of load. Do not modify it.
+	 */
+	public LatencyHistogram getLatencies(int loadType) {
+		return mLatencies[loadType];
+	}
+
+	/**
+	 * @param loadType Type of load
+	 * @return Number of loads finished, with or without error
+	 */
+	public long getLoadCount(int loadType) {
+		return mLatencies[loadType].getCount();
+	}
+
+	/**
+	 * @param loadType Type of load
+	 * @return Number of loads finished with an error
+	 */
+	public long getErrorCount(int loadType) {
+		return mErrors[loadType];
+	}
+
+	/**
+	 * @param loadType Type of load
+	 * @return Number of retries after an error
+	 */
+	public long getRetryCount(int loadType) {
+		return mRetries[loadType];
+	}
+
+	/**
+	 * @param loadType Type of load
+	 * @return Number of items inserted by the loads
+	 */
+	public long getItemsInserted(int loadType) {
+		return mItemsInserted[loadType];
+	}
+
+	/**
+	 * @return A copy of the current metrics
+	 */
+	public synchronized LoadingMetrics snapshot() {
+		return new LoadingMetrics(this);
+	}
+
+	/**
+	 * Clears all the metrics recorded.
+	 */
+	public synchronized void clear() {
+		for (int i = 0; i < LOAD_TYPES; i++) {
+			mLatencies[i].clear();
+			mErrors[i] = 0;
+			mRetries[i] = 0;
+			mItemsInserted[i] = 0;
+		}
+	}
+
+	/**
+	 * Listener called each time a load finishes.
+	 */
+	public interface OnLoadFinishedListener {
+
+		/**
+		 * @param loadType      Type of load
+		 * @param latency       Time in milliseconds since the load started
+		 * @param error         Whether the load finished with an error or not
+		 * @param itemsInserted Number of items inserted
+		 */
+		public void onLoadFinished(int loadType, long latency, boolean error, int itemsInserted);
+	}
+}
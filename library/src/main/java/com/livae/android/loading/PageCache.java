@@ -0,0 +1,91 @@
+package com.livae.android.loading;
+
+import android.util.LruCache;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Process-wide cache of the initial pages of the feeds. The pages are kept in a least recently
+ * used cache bounded by the total number of items, so the pages of the feeds which are not visited
+ * are removed first.
+ *
+ * @see CachedLoadListener
+ */
+public class PageCache {
+
+	/**
+	 * Default maximum number of items in the cache.
+	 */
+	public static final int DEFAULT_MAX_ITEMS = 1000;
+
+	private static int sMaxItems = DEFAULT_MAX_ITEMS;
+
+	private static LruCache<String, List<?>> sCache;
+
+	private PageCache() {
+	}
+
+	/**
+	 * Sets the maximum number of items of all the pages in the cache. It must be called before the
+	 * cache is used for the first time.
+	 *
+	 * @param maxItems Maximum number of items
+	 */
+	public static synchronized void setMaxItems(int maxItems) {
+		if (sCache != null) {
+			throw new RuntimeException("The size must be set before using the cache");
+		}
+		if (maxItems <= 0) {
+			throw new RuntimeException("The size of the cache must be positive");
+		}
+		sMaxItems = maxItems;
+	}
+
+	private static LruCache<String, List<?>> getCache() {
+		if (sCache == null) {
+			sCache = new LruCache<String, List<?>>(sMaxItems) {
+				@Override
+				protected int sizeOf(String key, List<?> value) {
+					return Math.max(1, value.size());
+				}
+			};
+		}
+		return sCache;
+	}
+
+	/**
+	 * Stores a copy of the initial page of a feed.
+	 *
+	 * @param key   Key of the feed
+	 * @param items Items of the initial page
+	 */
+	public static synchronized <E> void put(String key, List<E> items) {
+		getCache().put(key, new ArrayList<>(items));
+	}
+
+	/**
+	 * @param key Key of the feed
+	 * @return The initial page of the feed or null if it is not in the cache. Do not modify it.
+	 */
+	public static synchronized <E> List<E> get(String key) {
+		//noinspection unchecked
+		return (List<E>) getCache().get(key);
+	}
+
+	/**
+	 * Removes the initial page of a feed.
+	 *
+	 * @param key Key of the feed
+	 */
+	public static synchronized void remove(String key) {
+		getCache().remove(key);
+	}
+
+	/**
+	 * Removes all the pages.
+	 */
+	public static synchronized void clear() {
+		getCache().evictAll();
+	}
+}
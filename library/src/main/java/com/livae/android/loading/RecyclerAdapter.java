@@ -1,13 +1,18 @@
 package com.livae.android.loading;
 
 import android.content.Context;
+import android.os.Looper;
+import android.os.MessageQueue;
 import android.support.annotation.NonNull;
 import android.support.v7.widget.RecyclerView;
+import android.support.v7.widget.StaggeredGridLayoutManager;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.ProgressBar;
 
+import java.util.Arrays;
+
 /**
  * Recycler adapter wrapper which adds to a recycler adapter views for loading items.
  *
@@ -16,12 +21,46 @@ import android.widget.ProgressBar;
 public class RecyclerAdapter<k extends RecyclerView.ViewHolder> extends RecyclerView
 		.Adapter<RecyclerView.ViewHolder> {
 
-	private static final int TYPE_TOP_HEADER = -2;
-	private static final int TYPE_TOP_LOADING = -3;
-	private static final int TYPE_TOP_ERROR = -4;
-	private static final int TYPE_BOTTOM_LOADING = -5;
-	private static final int TYPE_BOTTOM_ERROR = -6;
-	private static final int TYPE_BOTTOM_FOOTER = -7;
+	/**
+	 * View type of the header view.
+	 */
+	public static final int TYPE_TOP_HEADER = -2;
+	/**
+	 * View type of the top loading view.
+	 */
+	public static final int TYPE_TOP_LOADING = -3;
+	/**
+	 * View type of the top error view.
+	 */
+	public static final int TYPE_TOP_ERROR = -4;
+	/**
+	 * View type of the bottom loading view.
+	 */
+	public static final int TYPE_BOTTOM_LOADING = -5;
+	/**
+	 * View type of the bottom error view.
+	 */
+	public static final int TYPE_BOTTOM_ERROR = -6;
+	/**
+	 * View type of the footer view.
+	 */
+	public static final int TYPE_BOTTOM_FOOTER = -7;
+	/**
+	 * View type of the placeholder views of the items not loaded yet.
+	 */
+	public static final int TYPE_PLACEHOLDER = -8;
+
+	private static final int MAX_DECORATION_SLOTS = 3;
+
+	private static final int OP_CHANGE = 0;
+	private static final int OP_INSERT = 1;
+	private static final int OP_REMOVE = 2;
+	private static final int OP_MOVE = 3;
+	private static final int OP_SIZE = 3;
+
+	static final byte PAGE_NOT_LOADED = 0;
+	static final byte PAGE_LOADING = 1;
+	static final byte PAGE_LOADED = 2;
 
 	private final Context mContext;
 	private final RecyclerView.Adapter mAdapter;
@@ -37,6 +76,26 @@ public class RecyclerAdapter<k extends RecyclerView.ViewHolder> extends Recycler
 	private View mHeaderView;
 	private View mFooterView;
 
+	// decoration layout, rebuilt only when a decoration is toggled
+	private final int[] mTopSlots;
+	private final int[] mBottomSlots;
+	private int mTopSlotsCount;
+	private int mBottomSlotsCount;
+
+	// pending notifications while a batch update is open, stored as (op, position, count)
+	private int[] mBatchOps;
+	private int mBatchOpsCount;
+	private int mBatchDepth;
+
+	private ViewTypeProfiler mViewTypeProfiler;
+	private boolean mPrewarmScheduled;
+
+	// placeholder mode
+	private LoadingHelper.PageLoadListener mPageLoadListener;
+	private int mPageSize;
+	private int mTotalCount;
+	private byte[] mPageStates;
+
 	/**
 	 * Default constructor, it requires the adapter which will wrap and the loading fragment in
 	 * order to bind the top loading view.
@@ -58,38 +117,52 @@ public class RecyclerAdapter<k extends RecyclerView.ViewHolder> extends Recycler
 		mShowBottomLoading = false;
 		mShowTopError = false;
 		mShowBottomError = false;
+		mTopSlots = new int[MAX_DECORATION_SLOTS];
+		mBottomSlots = new int[MAX_DECORATION_SLOTS];
+		mBatchOps = new int[OP_SIZE * 8];
+		updateDecorationLayout();
 		mAdapter.registerAdapterDataObserver(new RecyclerView.AdapterDataObserver() {
 			@Override
 			public void onChanged() {
+				invalidateSpanCache();
 				RecyclerAdapter.this.notifyDataSetChanged();
 			}
 
 			@Override
 			public void onItemRangeChanged(int positionStart, int itemCount) {
-				RecyclerAdapter.this.notifyItemRangeChanged(positionStart, itemCount);
+				notifyDataItemRangeChanged(positionStart, itemCount);
 			}
 
 			@Override
 			public void onItemRangeInserted(int positionStart, int itemCount) {
-				RecyclerAdapter.this.notifyItemRangeInserted(positionStart, itemCount);
+				notifyDataItemRangeInserted(positionStart, itemCount);
 			}
 
 			@Override
 			public void onItemRangeRemoved(int positionStart, int itemCount) {
-				RecyclerAdapter.this.notifyItemRangeRemoved(positionStart, itemCount);
+				notifyDataItemRangeRemoved(positionStart, itemCount);
 			}
 
 			@Override
 			public void onItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
-				for (int i = 0; i < itemCount; i++) {
-					RecyclerAdapter.this.notifyItemMoved(fromPosition + 1, toPosition + 1);
-				}
+				notifyDataItemRangeMoved(fromPosition, toPosition, itemCount);
 			}
 		});
 	}
 
 	@Override
 	public RecyclerView.ViewHolder onCreateViewHolder(ViewGroup viewGroup, int type) {
+		ViewTypeProfiler profiler = mViewTypeProfiler;
+		if (profiler == null) {
+			return createWrappedViewHolder(viewGroup, type);
+		}
+		long start = System.nanoTime();
+		RecyclerView.ViewHolder viewHolder = createWrappedViewHolder(viewGroup, type);
+		profiler.recordCreate(type, System.nanoTime() - start);
+		return viewHolder;
+	}
+
+	private RecyclerView.ViewHolder createWrappedViewHolder(ViewGroup viewGroup, int type) {
 		RecyclerView.ViewHolder viewHolder;
 		switch (type) {
 			case TYPE_TOP_HEADER:
@@ -106,6 +179,11 @@ public class RecyclerAdapter<k extends RecyclerView.ViewHolder> extends Recycler
 						new CircularLoadingDrawable(mContext,
 								mLoadingHelper.getColorCircularLoading(),
 								mLoadingHelper.getColorCircularLoadingActive()));
+				CircularLoadingDrawable indeterminateDrawable = new CircularLoadingDrawable(mContext,
+						mLoadingHelper.getColorCircularLoading(),
+						mLoadingHelper.getColorCircularLoadingActive());
+				indeterminateDrawable.setIndeterminate(true);
+				topViewHolder.mTopLoading.setIndeterminateDrawable(indeterminateDrawable);
 				viewHolder = topViewHolder;
 				break;
 			case TYPE_TOP_ERROR:
@@ -122,14 +200,60 @@ public class RecyclerAdapter<k extends RecyclerView.ViewHolder> extends Recycler
 			case TYPE_BOTTOM_FOOTER:
 				viewHolder = new ViewHolder(mFooterView);
 				break;
+			case TYPE_PLACEHOLDER:
+				viewHolder = new ViewHolder(mPageLoadListener.createPlaceholderView(viewGroup));
+				break;
 			default:
 				viewHolder = mAdapter.onCreateViewHolder(viewGroup, type);
 		}
+		if (type <= TYPE_TOP_HEADER && type >= TYPE_BOTTOM_FOOTER) {
+			setFullSpan(viewGroup, viewHolder.itemView);
+		}
 		return viewHolder;
 	}
 
+	/**
+	 * Makes the view use all the spans when the recycler view uses a StaggeredGridLayoutManager.
+	 *
+	 * @param parent The recycler view
+	 * @param view   The view of a header, loading, error or footer item
+	 */
+	private static void setFullSpan(ViewGroup parent, View view) {
+		if (!(parent instanceof RecyclerView) || !(((RecyclerView) parent).getLayoutManager()
+				instanceof StaggeredGridLayoutManager)) {
+			return;
+		}
+		ViewGroup.LayoutParams layoutParams = view.getLayoutParams();
+		StaggeredGridLayoutManager.LayoutParams staggeredLayoutParams;
+		if (layoutParams instanceof StaggeredGridLayoutManager.LayoutParams) {
+			staggeredLayoutParams = (StaggeredGridLayoutManager.LayoutParams) layoutParams;
+		} else if (layoutParams instanceof ViewGroup.MarginLayoutParams) {
+			// keeps the margins of the view
+			staggeredLayoutParams = new StaggeredGridLayoutManager.LayoutParams(
+					(ViewGroup.MarginLayoutParams) layoutParams);
+		} else if (layoutParams != null) {
+			staggeredLayoutParams = new StaggeredGridLayoutManager.LayoutParams(layoutParams);
+		} else {
+			staggeredLayoutParams = new StaggeredGridLayoutManager.LayoutParams(
+					ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.WRAP_CONTENT);
+		}
+		staggeredLayoutParams.setFullSpan(true);
+		view.setLayoutParams(staggeredLayoutParams);
+	}
+
 	@Override
 	public void onBindViewHolder(RecyclerView.ViewHolder viewHolder, int position) {
+		ViewTypeProfiler profiler = mViewTypeProfiler;
+		if (profiler == null) {
+			bindWrappedViewHolder(viewHolder, position);
+		} else {
+			long start = System.nanoTime();
+			bindWrappedViewHolder(viewHolder, position);
+			profiler.recordBind(viewHolder.getItemViewType(), position, System.nanoTime() - start);
+		}
+	}
+
+	private void bindWrappedViewHolder(RecyclerView.ViewHolder viewHolder, int position) {
 		switch (viewHolder.getItemViewType()) {
 			case TYPE_TOP_HEADER:
 				break;
@@ -146,48 +270,72 @@ public class RecyclerAdapter<k extends RecyclerView.ViewHolder> extends Recycler
 				break;
 			case TYPE_BOTTOM_FOOTER:
 				break;
+			case TYPE_PLACEHOLDER:
+				break;
 			default:
 				//noinspection unchecked
 				mAdapter.onBindViewHolder(viewHolder, position - getHeaderCount());
 		}
 	}
 
-	private int getHeaderCount() {
-		int countAdd = 0;
-		if (mHeaderView != null) {
-			countAdd += 1;
-		}
-		if (mShowTopLoading) {
-			countAdd += 1;
-		}
-		if (mShowTopError) {
-			countAdd += 1;
-		}
-		return countAdd;
+	@Override
+	public void onViewAttachedToWindow(RecyclerView.ViewHolder viewHolder) {
+		mLoadingHelper.onItemViewAttached(viewHolder.itemView);
 	}
 
 	@Override
-	public int getItemCount() {
-		int countAdd = 0;
+	public void onViewDetachedFromWindow(RecyclerView.ViewHolder viewHolder) {
+		mLoadingHelper.onItemViewDetached(viewHolder.itemView);
+	}
+
+	/**
+	 * Rebuilds the table with the view types of the decoration items before and after the data
+	 * items. It must be called every time one of the decorations is shown or hidden.
+	 */
+	private void updateDecorationLayout() {
+		int top = 0;
 		if (mHeaderView != null) {
-			countAdd += 1;
+			mTopSlots[top++] = TYPE_TOP_HEADER;
 		}
 		if (mShowTopLoading) {
-			countAdd += 1;
+			mTopSlots[top++] = TYPE_TOP_LOADING;
 		}
 		if (mShowTopError) {
-			countAdd += 1;
+			mTopSlots[top++] = TYPE_TOP_ERROR;
 		}
+		mTopSlotsCount = top;
+		int bottom = 0;
 		if (mShowBottomLoading) {
-			countAdd += 1;
+			mBottomSlots[bottom++] = TYPE_BOTTOM_LOADING;
 		}
 		if (mShowBottomError) {
-			countAdd += 1;
+			mBottomSlots[bottom++] = TYPE_BOTTOM_ERROR;
 		}
 		if (mFooterView != null) {
-			countAdd += 1;
+			mBottomSlots[bottom++] = TYPE_BOTTOM_FOOTER;
 		}
-		return mAdapter.getItemCount() + countAdd;
+		mBottomSlotsCount = bottom;
+	}
+
+	/**
+	 * @return The number of decoration items before the data items: header, top loading and top
+	 * error views.
+	 */
+	int getHeaderCount() {
+		return mTopSlotsCount;
+	}
+
+	/**
+	 * @return The number of decoration items after the data items: bottom loading, bottom error and
+	 * footer views.
+	 */
+	int getFooterCount() {
+		return mBottomSlotsCount;
+	}
+
+	@Override
+	public int getItemCount() {
+		return getAdapterItemCount() + mTopSlotsCount + mBottomSlotsCount;
 	}
 
 	private int getHeaderPosition() {
@@ -215,7 +363,7 @@ public class RecyclerAdapter<k extends RecyclerView.ViewHolder> extends Recycler
 	}
 
 	private int getBottomLoadingPosition() {
-		int pos = getTopErrorPosition() + mAdapter.getItemCount();
+		int pos = getTopErrorPosition() + getAdapterItemCount();
 		if (mShowBottomLoading) {
 			pos += 1;
 		}
@@ -240,47 +388,117 @@ public class RecyclerAdapter<k extends RecyclerView.ViewHolder> extends Recycler
 
 	/**
 	 * @return The number of items of the adapter with the data. It does not include the header and
-	 * footer views for loading items, errors and custom views.
+	 * footer views for loading items, errors and custom views. In placeholder mode it is the total
+	 * number of items, loaded or not.
 	 */
 	public int getAdapterItemCount() {
-		return mAdapter.getItemCount();
+		return mPageLoadListener != null ? mTotalCount : mAdapter.getItemCount();
+	}
+
+	/**
+	 * Enables or disables the placeholder mode. In placeholder mode the adapter has the total
+	 * number of items and the items of the pages not loaded are displayed with placeholder views.
+	 * The wrapped adapter receives the absolute positions of the items.
+	 *
+	 * @param pageSize         Number of items of each page
+	 * @param pageLoadListener Listener which creates the placeholder views or null to disable the
+	 *                         placeholder mode
+	 */
+	void setPlaceholders(int pageSize, LoadingHelper.PageLoadListener pageLoadListener) {
+		mPageLoadListener = pageLoadListener;
+		mPageSize = pageSize;
+		mTotalCount = 0;
+		mPageStates = new byte[0];
+	}
+
+	/**
+	 * @return true if the placeholder mode is enabled
+	 */
+	boolean isPlaceholderMode() {
+		return mPageLoadListener != null;
+	}
+
+	/**
+	 * @return Number of items of each page in placeholder mode
+	 */
+	int getPageSize() {
+		return mPageSize;
+	}
+
+	/**
+	 * @return Number of pages in placeholder mode
+	 */
+	int getPageCount() {
+		return mPageStates.length;
+	}
+
+	byte getPageState(int page) {
+		return mPageStates[page];
+	}
+
+	void setPageState(int page, byte state) {
+		mPageStates[page] = state;
+	}
+
+	/**
+	 * Changes the total number of items in placeholder mode, the states of the pages already
+	 * loaded are kept. The items are inserted or removed at the end. When the total grows the last
+	 * page, if it was partial, is marked as not loaded so it is requested again with its new
+	 * items.
+	 *
+	 * @param totalCount Total number of items
+	 */
+	void setTotalCount(int totalCount) {
+		int oldTotalCount = mTotalCount;
+		if (totalCount == oldTotalCount) {
+			return;
+		}
+		int lastPage = oldTotalCount / mPageSize;
+		if (totalCount > oldTotalCount && oldTotalCount % mPageSize != 0
+			&& mPageStates[lastPage] != PAGE_NOT_LOADED) {
+			// a pending load of the page does not have the new items, its result is ignored
+			mPageStates[lastPage] = PAGE_NOT_LOADED;
+			int positionStart = lastPage * mPageSize;
+			notifyDataItemRangeChanged(positionStart, oldTotalCount - positionStart);
+		}
+		int pages = (totalCount + mPageSize - 1) / mPageSize;
+		if (pages != mPageStates.length) {
+			mPageStates = Arrays.copyOf(mPageStates, pages);
+		}
+		mTotalCount = totalCount;
+		if (totalCount > oldTotalCount) {
+			notifyDataItemRangeInserted(oldTotalCount, totalCount - oldTotalCount);
+		} else {
+			notifyDataItemRangeRemoved(totalCount, oldTotalCount - totalCount);
+		}
+	}
+
+	/**
+	 * Removes all the items and page states in placeholder mode without notifying the changes.
+	 */
+	void clearPlaceholders() {
+		mTotalCount = 0;
+		mPageStates = new byte[0];
 	}
 
 	@Override
 	public int getItemViewType(int position) {
-		int pos = position - getHeaderCount();
-		if (pos >= 0 && pos < mAdapter.getItemCount()) {
-			return mAdapter.getItemViewType(pos);
-		} else {
-			int itemCount = getItemCount();
-			if (mHeaderView != null && position == 0) {
-				return TYPE_TOP_HEADER;
-			} else if (mShowTopLoading
-					&& ((mHeaderView == null && position == 0) ||
-					(mHeaderView != null && position == 1))) {
-				return TYPE_TOP_LOADING;
-			} else if (mShowTopError
-					&& ((mHeaderView == null && !mShowTopLoading && position == 0) ||
-					(mHeaderView == null && mShowTopLoading && position == 1) ||
-					(mHeaderView != null && !mShowTopLoading && position == 1) ||
-					(mHeaderView != null && mShowTopLoading && position == 2))) {
-				return TYPE_TOP_ERROR;
-			} else if (mFooterView != null && position == itemCount - 1) {
-				return TYPE_BOTTOM_FOOTER;
-			} else if (mShowBottomError
-					&& ((mFooterView == null && position == itemCount - 1) ||
-					(mFooterView != null && position == itemCount - 2))) {
-				return TYPE_BOTTOM_ERROR;
-			} else if (mShowBottomLoading
-					&& ((mFooterView == null && !mShowBottomError && position == itemCount - 1) ||
-					(mFooterView == null && mShowBottomError && position == itemCount - 2) ||
-					(mFooterView != null && !mShowBottomError && position == itemCount - 2) ||
-					(mFooterView != null && mShowBottomError && position == itemCount - 3))) {
-				return TYPE_BOTTOM_LOADING;
-			} else {
-				throw new RuntimeException("should not happen");
+		if (position < mTopSlotsCount) {
+			return mTopSlots[position];
+		}
+		int pos = position - mTopSlotsCount;
+		int dataCount = getAdapterItemCount();
+		if (pos < dataCount) {
+			if (mPageLoadListener != null && mPageStates[pos / mPageSize] != PAGE_LOADED) {
+				return TYPE_PLACEHOLDER;
 			}
+			return mAdapter.getItemViewType(pos);
 		}
+		pos -= dataCount;
+		if (pos < mBottomSlotsCount) {
+			return mBottomSlots[pos];
+		}
+		throw new RuntimeException("should not happen");
 	}
 
 	/**
@@ -292,12 +510,14 @@ public class RecyclerAdapter<k extends RecyclerView.ViewHolder> extends Recycler
 		if (mShowTopLoading != show) {
 			if (show) {
 				mShowTopLoading = true;
+				updateDecorationLayout();
 				int position = getTopLoadingPosition();
-				notifyItemInserted(position);
+				dispatchItemRange(OP_INSERT, position, 1);
 			} else {
 				int position = getTopLoadingPosition();
 				mShowTopLoading = false;
-				notifyItemRemoved(position);
+				updateDecorationLayout();
+				dispatchItemRange(OP_REMOVE, position, 1);
 			}
 		}
 	}
@@ -311,12 +531,14 @@ public class RecyclerAdapter<k extends RecyclerView.ViewHolder> extends Recycler
 		if (mShowTopError != show && mErrorViewsCreator.hasTopErrorView()) {
 			if (show) {
 				mShowTopError = true;
+				updateDecorationLayout();
 				int position = getTopErrorPosition();
-				notifyItemInserted(position);
+				dispatchItemRange(OP_INSERT, position, 1);
 			} else {
 				int position = getTopErrorPosition();
 				mShowTopError = false;
-				notifyItemRemoved(position);
+				updateDecorationLayout();
+				dispatchItemRange(OP_REMOVE, position, 1);
 			}
 		}
 	}
@@ -330,12 +552,14 @@ public class RecyclerAdapter<k extends RecyclerView.ViewHolder> extends Recycler
 		if (mShowBottomLoading != show) {
 			if (show) {
 				mShowBottomLoading = true;
+				updateDecorationLayout();
 				int position = getBottomLoadingPosition();
-				notifyItemInserted(position);
+				dispatchItemRange(OP_INSERT, position, 1);
 			} else {
 				int position = getBottomLoadingPosition();
 				mShowBottomLoading = false;
-				notifyItemRemoved(position);
+				updateDecorationLayout();
+				dispatchItemRange(OP_REMOVE, position, 1);
 			}
 		}
 	}
@@ -349,12 +573,14 @@ public class RecyclerAdapter<k extends RecyclerView.ViewHolder> extends Recycler
 		if (mShowBottomError != show && mErrorViewsCreator.hasBottomErrorView()) {
 			if (show) {
 				mShowBottomError = true;
+				updateDecorationLayout();
 				int position = getBottomErrorPosition();
-				notifyItemInserted(position);
+				dispatchItemRange(OP_INSERT, position, 1);
 			} else {
 				int position = getBottomErrorPosition();
 				mShowBottomError = false;
-				notifyItemRemoved(position);
+				updateDecorationLayout();
+				dispatchItemRange(OP_REMOVE, position, 1);
 			}
 		}
 	}
@@ -368,17 +594,20 @@ public class RecyclerAdapter<k extends RecyclerView.ViewHolder> extends Recycler
 		if (mHeaderView != headerView) {
 			if (mHeaderView == null) {
 				mHeaderView = headerView;
+				updateDecorationLayout();
 				int position = getHeaderPosition();
-				notifyItemInserted(position);
+				dispatchItemRange(OP_INSERT, position, 1);
 			} else {
 				if (headerView != null) {
 					mHeaderView = headerView;
+					updateDecorationLayout();
 					int position = getHeaderPosition();
-					notifyItemChanged(position);
+					dispatchItemRange(OP_CHANGE, position, 1);
 				} else {
 					int position = getHeaderPosition();
 					mHeaderView = null;
-					notifyItemRemoved(position);
+					updateDecorationLayout();
+					dispatchItemRange(OP_REMOVE, position, 1);
 				}
 			}
 		}
@@ -393,17 +622,20 @@ public class RecyclerAdapter<k extends RecyclerView.ViewHolder> extends Recycler
 		if (mFooterView != footerView) {
 			if (mFooterView == null) {
 				mFooterView = footerView;
+				updateDecorationLayout();
 				int position = getFooterPosition();
-				notifyItemInserted(position);
+				dispatchItemRange(OP_INSERT, position, 1);
 			} else {
 				if (footerView != null) {
 					mFooterView = footerView;
+					updateDecorationLayout();
 					int position = getFooterPosition();
-					notifyItemChanged(position);
+					dispatchItemRange(OP_CHANGE, position, 1);
 				} else {
 					int position = getFooterPosition();
 					mFooterView = null;
-					notifyItemRemoved(position);
+					updateDecorationLayout();
+					dispatchItemRange(OP_REMOVE, position, 1);
 				}
 			}
 		}
@@ -457,7 +689,7 @@ public class RecyclerAdapter<k extends RecyclerView.ViewHolder> extends Recycler
 	 * @see android.support.v7.widget.RecyclerView.Adapter#notifyItemChanged(int)
 	 */
 	public void notifyDataItemChanged(int position) {
-		super.notifyItemChanged(getHeaderCount() + position);
+		dispatchDataItemRange(OP_CHANGE, position, 1);
 	}
 
 	/**
@@ -467,7 +699,7 @@ public class RecyclerAdapter<k extends RecyclerView.ViewHolder> extends Recycler
 	 * @see android.support.v7.widget.RecyclerView.Adapter#notifyItemRangeChanged(int, int)
 	 */
 	public void notifyDataItemRangeChanged(int positionStart, int itemCount) {
-		super.notifyItemRangeChanged(getHeaderCount() + positionStart, itemCount);
+		dispatchDataItemRange(OP_CHANGE, positionStart, itemCount);
 	}
 
 	/**
@@ -477,7 +709,7 @@ public class RecyclerAdapter<k extends RecyclerView.ViewHolder> extends Recycler
 	 * @see android.support.v7.widget.RecyclerView.Adapter#notifyItemInserted(int)
 	 */
 	public void notifyDataItemInserted(int position) {
-		super.notifyItemInserted(getHeaderCount() + position);
+		dispatchDataItemRange(OP_INSERT, position, 1);
 	}
 
 	/**
@@ -487,7 +719,47 @@ public class RecyclerAdapter<k extends RecyclerView.ViewHolder> extends Recycler
 	 * @see android.support.v7.widget.RecyclerView.Adapter#notifyItemMoved(int, int)
 	 */
 	public void notifyDataItemMoved(int fromPosition, int toPosition) {
-		super.notifyItemMoved(getHeaderCount() + fromPosition, getHeaderCount() + toPosition);
+		dispatchDataItemRange(OP_MOVE, fromPosition, toPosition);
+	}
+
+	/**
+	 * Notify that the <code>itemCount</code> items starting at <code>fromPosition</code> have been
+	 * moved, so the first of them is now at <code>toPosition</code>. The change is notified with the
+	 * fewest single item moves: the items of the block are moved when the block is smaller than the
+	 * distance, otherwise the items displaced by the block are moved. Only the moved items are
+	 * rebound and the moves are animated.
+	 *
+	 * @see android.support.v7.widget.RecyclerView.Adapter#notifyItemMoved(int, int)
+	 */
+	public void notifyDataItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
+		if (fromPosition < toPosition) {
+			int distance = toPosition - fromPosition;
+			if (itemCount <= distance) {
+				// the first item of the block is always at fromPosition and goes after the others
+				int target = toPosition + itemCount - 1;
+				for (int i = 0; i < itemCount; i++) {
+					notifyDataItemMoved(fromPosition, target);
+				}
+			} else {
+				// the items after the block go before it
+				for (int i = 0; i < distance; i++) {
+					notifyDataItemMoved(fromPosition + itemCount + i, fromPosition + i);
+				}
+			}
+		} else if (fromPosition > toPosition) {
+			int distance = fromPosition - toPosition;
+			if (itemCount <= distance) {
+				for (int i = 0; i < itemCount; i++) {
+					notifyDataItemMoved(fromPosition + i, toPosition + i);
+				}
+			} else {
+				// the items before the block go after it, starting with the last one
+				int last = fromPosition + itemCount - 1;
+				for (int i = 0; i < distance; i++) {
+					notifyDataItemMoved(fromPosition - 1 - i, last - i);
+				}
+			}
+		}
 	}
 
 	/**
@@ -499,7 +771,7 @@ public class RecyclerAdapter<k extends RecyclerView.ViewHolder> extends Recycler
 	 * @see android.support.v7.widget.RecyclerView.Adapter#notifyItemRangeInserted(int, int)
 	 */
 	public void notifyDataItemRangeInserted(int positionStart, int itemCount) {
-		super.notifyItemRangeInserted(getHeaderCount() + positionStart, itemCount);
+		dispatchDataItemRange(OP_INSERT, positionStart, itemCount);
 	}
 
 	/**
@@ -510,7 +782,7 @@ public class RecyclerAdapter<k extends RecyclerView.ViewHolder> extends Recycler
 	 * @see android.support.v7.widget.RecyclerView.Adapter#notifyItemRemoved(int)
 	 */
 	public void notifyDataItemRemoved(int position) {
-		super.notifyItemRemoved(getHeaderCount() + position);
+		dispatchDataItemRange(OP_REMOVE, position, 1);
 	}
 
 	/**
@@ -522,7 +794,245 @@ public class RecyclerAdapter<k extends RecyclerView.ViewHolder> extends Recycler
 	 * @see android.support.v7.widget.RecyclerView.Adapter#notifyItemRangeRemoved(int, int)
 	 */
 	public void notifyDataItemRangeRemoved(int positionStart, int itemCount) {
-		super.notifyItemRangeRemoved(getHeaderCount() + positionStart, itemCount);
+		dispatchDataItemRange(OP_REMOVE, positionStart, itemCount);
+	}
+
+	/**
+	 * Creates the loading and error views in advance when the main thread is idle and keeps them in
+	 * the recycled view pool of the recycler view, so they are not inflated when they are displayed
+	 * while scrolling. One view is created each time the thread is idle. It is only done once.
+	 *
+	 * @param recyclerView The recycler view where this adapter is set
+	 */
+	void prewarmDecorationViews(final RecyclerView recyclerView) {
+		if (mPrewarmScheduled) {
+			return;
+		}
+		mPrewarmScheduled = true;
+		final int[] types = new int[4];
+		int count = 0;
+		types[count++] = TYPE_BOTTOM_LOADING;
+		types[count++] = TYPE_TOP_LOADING;
+		if (mErrorViewsCreator.hasBottomErrorView()) {
+			types[count++] = TYPE_BOTTOM_ERROR;
+		}
+		if (mErrorViewsCreator.hasTopErrorView()) {
+			types[count++] = TYPE_TOP_ERROR;
+		}
+		final int typesCount = count;
+		// one view of each type fits in the default size of the pool, the size is not changed so
+		// the apps which recycle more decoration views keep their size
+		final RecyclerView.RecycledViewPool pool = recyclerView.getRecycledViewPool();
+		Looper.myQueue().addIdleHandler(new MessageQueue.IdleHandler() {
+			private int mNext = 0;
+
+			@Override
+			public boolean queueIdle() {
+				if (recyclerView.getAdapter() != RecyclerAdapter.this) {
+					return false;
+				}
+				pool.putRecycledView(createViewHolder(recyclerView, types[mNext]));
+				mNext++;
+				return mNext < typesCount;
+			}
+		});
+	}
+
+	/**
+	 * Sets a profiler to record the time spent creating and binding the view holders of each view
+	 * type. By default there is no profiler.
+	 *
+	 * @param profiler The profiler or null to stop profiling
+	 */
+	public void setViewTypeProfiler(ViewTypeProfiler profiler) {
+		mViewTypeProfiler = profiler;
+	}
+
+	/**
+	 * @return The profiler of the view holders or null if there is none
+	 * @see #setViewTypeProfiler(ViewTypeProfiler)
+	 */
+	public ViewTypeProfiler getViewTypeProfiler() {
+		return mViewTypeProfiler;
+	}
+
+	/**
+	 * Starts a batch update. All the changes notified until the matching call to
+	 * #endBatchUpdate() are kept and merged, and they are dispatched to the recycler view as the
+	 * minimum set of notifications when the batch finishes. Batch updates can be nested.
+	 *
+	 * @see #endBatchUpdate()
+	 */
+	void beginBatchUpdate() {
+		mBatchDepth++;
+	}
+
+	/**
+	 * Finishes a batch update started with #beginBatchUpdate(). When the outermost batch finishes
+	 * the pending notifications are dispatched.
+	 *
+	 * @see #beginBatchUpdate()
+	 */
+	void endBatchUpdate() {
+		if (mBatchDepth == 0) {
+			throw new RuntimeException("End batch update without begin batch update");
+		}
+		mBatchDepth--;
+		if (mBatchDepth == 0) {
+			int count = mBatchOpsCount;
+			mBatchOpsCount = 0;
+			for (int i = 0; i < count; i += OP_SIZE) {
+				notifyItemRange(mBatchOps[i], mBatchOps[i + 1], mBatchOps[i + 2]);
+			}
+		}
+	}
+
+	/**
+	 * @return true if there is a batch update in progress
+	 */
+	public boolean isBatchUpdating() {
+		return mBatchDepth > 0;
+	}
+
+	/**
+	 * Updates the span indices cached for the grid layout with a change of the data items and
+	 * dispatches it with the positions of the recycler view. For moves the count is the target
+	 * position.
+	 */
+	private void dispatchDataItemRange(int op, int position, int count) {
+		LoadingHelper.GridSpanSize gridSpanSize = mLoadingHelper.getGridSpanSize();
+		if (gridSpanSize != null) {
+			switch (op) {
+				case OP_CHANGE:
+					gridSpanSize.onItemRangeChanged(position, count);
+					break;
+				case OP_INSERT:
+					gridSpanSize.onItemRangeInserted(position, count);
+					break;
+				case OP_REMOVE:
+					gridSpanSize.onItemRangeRemoved(position, count);
+					break;
+				case OP_MOVE:
+					gridSpanSize.onItemRangeMoved(position, count, 1);
+					break;
+			}
+		}
+		int headerCount = getHeaderCount();
+		dispatchItemRange(op, headerCount + position, op == OP_MOVE ? headerCount + count : count);
+	}
+
+	/**
+	 * Clears the span indices cached for the grid layout.
+	 */
+	void invalidateSpanCache() {
+		LoadingHelper.GridSpanSize gridSpanSize = mLoadingHelper.getGridSpanSize();
+		if (gridSpanSize != null) {
+			gridSpanSize.invalidateCache();
+		}
+	}
+
+	/**
+	 * Notifies the recycler view or keeps the notification if there is a batch update in progress.
+	 * For moves the count is the target position.
+	 */
+	private void dispatchItemRange(int op, int position, int count) {
+		if (mBatchDepth == 0) {
+			notifyItemRange(op, position, count);
+		} else if (!mergeBatchOp(op, position, count)) {
+			if (mBatchOpsCount + OP_SIZE > mBatchOps.length) {
+				mBatchOps = Arrays.copyOf(mBatchOps, mBatchOps.length * 2);
+			}
+			mBatchOps[mBatchOpsCount] = op;
+			mBatchOps[mBatchOpsCount + 1] = position;
+			mBatchOps[mBatchOpsCount + 2] = count;
+			mBatchOpsCount += OP_SIZE;
+		}
+	}
+
+	/**
+	 * Tries to merge the notification with the last one of the batch.
+	 *
+	 * @return true if the notification was merged
+	 */
+	private boolean mergeBatchOp(int op, int position, int count) {
+		if (mBatchOpsCount == 0 || op == OP_MOVE) {
+			return false;
+		}
+		int last = mBatchOpsCount - OP_SIZE;
+		int lastOp = mBatchOps[last];
+		int lastStart = mBatchOps[last + 1];
+		int lastCount = mBatchOps[last + 2];
+		int lastEnd = lastStart + lastCount;
+		switch (lastOp) {
+			case OP_INSERT:
+				if (op == OP_INSERT && position >= lastStart && position <= lastEnd) {
+					mBatchOps[last + 2] = lastCount + count;
+					return true;
+				} else if (op == OP_REMOVE && position >= lastStart
+						&& position + count <= lastEnd) {
+					// the removed items were inserted in this batch
+					if (lastCount == count) {
+						mBatchOpsCount = last;
+					} else {
+						mBatchOps[last + 2] = lastCount - count;
+					}
+					return true;
+				}
+				break;
+			case OP_REMOVE:
+				if (op == OP_REMOVE && position == lastStart) {
+					mBatchOps[last + 2] = lastCount + count;
+					return true;
+				} else if (op == OP_REMOVE && position + count == lastStart) {
+					mBatchOps[last + 1] = position;
+					mBatchOps[last + 2] = lastCount + count;
+					return true;
+				} else if (op == OP_INSERT && position == lastStart && count == lastCount) {
+					// the items were replaced
+					mBatchOps[last] = OP_CHANGE;
+					return true;
+				}
+				break;
+			case OP_CHANGE:
+				if (op == OP_CHANGE && position <= lastEnd && position + count >= lastStart) {
+					int start = Math.min(position, lastStart);
+					int end = Math.max(position + count, lastEnd);
+					mBatchOps[last + 1] = start;
+					mBatchOps[last + 2] = end - start;
+					return true;
+				}
+				break;
+		}
+		return false;
+	}
+
+	private void notifyItemRange(int op, int position, int count) {
+		switch (op) {
+			case OP_CHANGE:
+				if (count == 1) {
+					notifyItemChanged(position);
+				} else {
+					notifyItemRangeChanged(position, count);
+				}
+				break;
+			case OP_INSERT:
+				if (count == 1) {
+					notifyItemInserted(position);
+				} else {
+					notifyItemRangeInserted(position, count);
+				}
+				break;
+			case OP_REMOVE:
+				if (count == 1) {
+					notifyItemRemoved(position);
+				} else {
+					notifyItemRangeRemoved(position, count);
+				}
+				break;
+			case OP_MOVE:
+				notifyItemMoved(position, count);
+				break;
+		}
 	}
 
 	class ViewHolder extends RecyclerView.ViewHolder {
@@ -0,0 +1,156 @@
+package com.livae.android.loading;
+
+import android.util.SparseArray;
+
+/**
+ * Profiler of the creation and binding of the view holders of the adapter. It records the durations
+ * in microseconds for each view type, including the types of the loading, error, header and footer
+ * views, and counts the binds which take longer than the frame budget.
+ *
+ * @see RecyclerAdapter#setViewTypeProfiler(ViewTypeProfiler)
+ * @see RecyclerAdapter#TYPE_TOP_LOADING
+ */
+public class ViewTypeProfiler {
+
+	/**
+	 * Default frame budget in microseconds.
+	 */
+	public static final long DEFAULT_FRAME_BUDGET = 16000;
+
+	private final SparseArray<LatencyHistogram> mCreateDurations;
+	private final SparseArray<LatencyHistogram> mBindDurations;
+	private final SparseArray<long[]> mSlowBinds;
+	private long mFrameBudget;
+	private OnSlowBindListener mOnSlowBindListener;
+
+	public ViewTypeProfiler() {
+		mCreateDurations = new SparseArray<>();
+		mBindDurations = new SparseArray<>();
+		mSlowBinds = new SparseArray<>();
+		mFrameBudget = DEFAULT_FRAME_BUDGET;
+	}
+
+	/**
+	 * Sets the maximum time a bind can take before it is considered slow. By default it is 16ms.
+	 *
+	 * @param microseconds The frame budget in microseconds
+	 */
+	public void setFrameBudget(long microseconds) {
+		if (microseconds > 0) {
+			mFrameBudget = microseconds;
+		}
+	}
+
+	/**
+	 * @return The frame budget in microseconds
+	 */
+	public long getFrameBudget() {
+		return mFrameBudget;
+	}
+
+	/**
+	 * Sets a listener which is called each time a bind takes longer than the frame budget.
+	 *
+	 * @param listener The listener
+	 */
+	public void setOnSlowBindListener(OnSlowBindListener listener) {
+		mOnSlowBindListener = listener;
+	}
+
+	void recordCreate(int viewType, long nanoseconds) {
+		getHistogram(mCreateDurations, viewType).record(nanoseconds / 1000);
+	}
+
+	void recordBind(int viewType, int position, long nanoseconds) {
+		long microseconds = nanoseconds / 1000;
+		getHistogram(mBindDurations, viewType).record(microseconds);
+		if (microseconds > mFrameBudget) {
+			long[] slowBinds = mSlowBinds.get(viewType);
+			if (slowBinds == null) {
+				slowBinds = new long[1];
+				mSlowBinds.put(viewType, slowBinds);
+			}
+			slowBinds[0]++;
+			if (mOnSlowBindListener != null) {
+				mOnSlowBindListener.onSlowBind(viewType, position, microseconds);
+			}
+		}
+	}
+
+	private static LatencyHistogram getHistogram(SparseArray<LatencyHistogram> histograms,
+												 int viewType) {
+		LatencyHistogram histogram = histograms.get(viewType);
+		if (histogram == null) {
+			histogram = new LatencyHistogram();
+			histograms.put(viewType, histogram);
+		}
+		return histogram;
+	}
+
+	/**
+	 * @return The view types with recorded creations or binds
+	 */
+	public int[] getViewTypes() {
+		SparseArray<Object> types = new SparseArray<>();
+		for (int i = 0; i < mCreateDurations.size(); i++) {
+			types.put(mCreateDurations.keyAt(i), this);
+		}
+		for (int i = 0; i < mBindDurations.size(); i++) {
+			types.put(mBindDurations.keyAt(i), this);
+		}
+		int[] viewTypes = new int[types.size()];
+		for (int i = 0; i < viewTypes.length; i++) {
+			viewTypes[i] = types.keyAt(i);
+		}
+		return viewTypes;
+	}
+
+	/**
+	 * @param viewType The view type
+	 * @return Histogram with the durations in microseconds of the creation of the view holders or
+	 * null if there are none. Do not modify it.
+	 */
+	public LatencyHistogram getCreateDurations(int viewType) {
+		return mCreateDurations.get(viewType);
+	}
+
+	/**
+	 * @param viewType The view type
+	 * @return Histogram with the durations in microseconds of the binds of the view holders or null
+	 * if there are none. Do not modify it.
+	 */
+	public LatencyHistogram getBindDurations(int viewType) {
+		return mBindDurations.get(viewType);
+	}
+
+	/**
+	 * @param viewType The view type
+	 * @return The number of binds which took longer than the frame budget
+	 */
+	public long getSlowBindCount(int viewType) {
+		long[] slowBinds = mSlowBinds.get(viewType);
+		return slowBinds == null ? 0 : slowBinds[0];
+	}
+
+	/**
+	 * Clears all the durations recorded.
+	 */
+	public void clear() {
+		mCreateDurations.clear();
+		mBindDurations.clear();
+		mSlowBinds.clear();
+	}
+
+	/**
+	 * Listener called when a bind takes longer than the frame budget.
+	 */
+	public interface OnSlowBindListener {
+
+		/**
+		 * @param viewType     The view type
+		 * @param position     The position of the item in the recycler view
+		 * @param microseconds The duration of the bind
+		 */
+		public void onSlowBind(int viewType, int position, long microseconds);
+	}
+}